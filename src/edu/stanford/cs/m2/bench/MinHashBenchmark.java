@@ -0,0 +1,148 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.bench;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.match.MinHashMatcher;
+import edu.stanford.cs.m2.match.ScoredPair;
+import edu.stanford.cs.m2.match.ScoringMatcher;
+import edu.stanford.cs.m2.match.Similarity;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ *  Measures the recall and speed of MinHashMatcher against the exact join on
+ *  a synthetic corpus. Every document draws a quarter of its fingerprints
+ *  from a small pool of common hashes, the boilerplate that makes the exact
+ *  join expensive, and the rest at random; one document in ten is a copy of
+ *  another with part of its fingerprints replaced. Recall is the fraction of
+ *  the pairs with a Jaccard similarity of at least the threshold that are
+ *  MinHash candidates.
+ *
+ *  Usage: MinHashBenchmark [documents] [fingerprints] [threshold]
+ */
+public class MinHashBenchmark {
+
+    private static final int[][] Configurations = {{10, 5}, {20, 5}, {25, 4}, {50, 3}, {100, 2}};
+
+    public static void main(String[] args) {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+
+        List<List<Document>> groups = new ArrayList<>();
+        groups.add(randomCorpus(documents, size, new Random(42)));
+        List<MappedIndex> archives = new ArrayList<>();
+
+        long start = System.nanoTime();
+        List<ScoredPair> truth = new ScoringMatcher(groups, archives, Similarity.Jaccard, threshold, 0).Score();
+        double scoreTime = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        int exactMatches = new ScoringMatcher(groups, archives, Similarity.Jaccard, threshold, 0).Match().size();
+        double exactTime = (System.nanoTime() - start) / 1e6;
+
+        System.out.println(String.format("%d documents, %d fingerprints each, %d pairs with Jaccard >= %.2f",
+                documents, size, truth.size(), threshold));
+        System.out.println(String.format("exact: scoring %.0f ms, scoring and matching %.0f ms, %d matches",
+                scoreTime, exactTime, exactMatches));
+        System.out.println(String.format("%6s %5s %10s %12s %8s %10s %10s", "bands", "rows", "S-curve", "candidates", "recall", "sketch ms", "match ms"));
+
+        for (int[] configuration : Configurations) {
+            MinHashMatcher matcher = new MinHashMatcher(groups, archives, configuration[0], configuration[1]);
+
+            start = System.nanoTime();
+            List<ScoredPair> candidates = matcher.Score();
+            double candidateTime = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            matcher.Match();
+            double matchTime = (System.nanoTime() - start) / 1e6;
+
+            Set<String> found = new HashSet<>();
+            for (ScoredPair pair : candidates) {
+                found.add(pair.Document1.Name + " " + pair.Document2.Name);
+            }
+            int recalled = 0;
+            for (ScoredPair pair : truth) {
+                if (found.contains(pair.Document1.Name + " " + pair.Document2.Name)) {
+                    recalled++;
+                }
+            }
+
+            System.out.println(String.format("%6d %5d %10.2f %12d %8.3f %10.0f %10.0f",
+                    configuration[0], configuration[1],
+                    Math.pow(1.0 / configuration[0], 1.0 / configuration[1]),
+                    candidates.size(), truth.isEmpty() ? 1 : (double) recalled / truth.size(),
+                    candidateTime, matchTime));
+        }
+    }
+
+    private static List<Document> randomCorpus(int documents, int size, Random random) {
+        long[] common = new long[1000];
+        for (int i = 0; i < common.length; i++) {
+            common[i] = random.nextLong();
+        }
+
+        List<Document> corpus = new ArrayList<>();
+        for (int d = 0; d < documents; d++) {
+            FingerPrints fingerPrints = new FingerPrints(10, size);
+            if (d % 10 == 9) {
+                // Copy an earlier document and replace part of it
+                FingerPrints original = corpus.get(random.nextInt(d)).FingerPrints;
+                double kept = 0.3 + 0.7 * random.nextDouble();
+                for (int i = 0; i < original.Size; i++) {
+                    long hash = random.nextDouble() < kept ? original.getHash(i) : random.nextLong();
+                    fingerPrints.Add(hash, 20 * i);
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    long hash = random.nextInt(4) == 0 ? common[random.nextInt(common.length)] : random.nextLong();
+                    fingerPrints.Add(hash, 20 * i);
+                }
+            }
+
+            Document document = new Document("synthetic" + d, null, null);
+            document.FingerPrints = fingerPrints;
+            corpus.add(document);
+        }
+        return corpus;
+    }
+}
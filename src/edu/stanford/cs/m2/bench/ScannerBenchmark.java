@@ -0,0 +1,125 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.bench;
+
+import edu.stanford.cs.m2.document.parse.CParser;
+import edu.stanford.cs.m2.document.parse.CScanner;
+import edu.stanford.cs.m2.document.parse.Parser;
+import edu.stanford.cs.m2.document.parse.TokenSink;
+import edu.stanford.cs.m2.util.ByteReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/*
+ *  Measures the throughput of CScanner against the JFlex CParser, in MB of
+ *  C source per second. Both scan the same files from memory into a sink
+ *  that only counts tokens, so neither file reads nor token storage are
+ *  timed. Each round scans all the files with each scanner in turn; the
+ *  rounds of the first WarmUpBytes warm up the JIT, and the median of the
+ *  others is reported.
+ *
+ *  Usage: ScannerBenchmark [rounds] files...
+ */
+public class ScannerBenchmark {
+
+    private static final long WarmUpBytes = 200L << 20;
+
+    public static void main(String[] args) throws IOException {
+        int rounds = Integer.parseInt(args[0]);
+        byte[][] files = new byte[args.length - 1][];
+        long bytes = 0;
+        for (int i = 1; i < args.length; i++) {
+            files[i - 1] = Files.readAllBytes(Paths.get(args[i]));
+            bytes += files[i - 1].length;
+        }
+
+        double[] parser = new double[rounds];
+        double[] scanner = new double[rounds];
+        Counter parserTokens = new Counter();
+        Counter scannerTokens = new Counter();
+
+        int warmUp = (int) Math.max(5, WarmUpBytes / Math.max(1, bytes));
+        for (int round = 0; round < warmUp + rounds; round++) {
+            parserTokens.Count = 0;
+            long start = System.nanoTime();
+            for (byte[] file : files) {
+                Scan(new CParser(new ByteReader(file)), parserTokens);
+            }
+            double parserTime = (System.nanoTime() - start) / 1e9;
+
+            scannerTokens.Count = 0;
+            start = System.nanoTime();
+            for (byte[] file : files) {
+                Scan(new CScanner(file), scannerTokens);
+            }
+            double scannerTime = (System.nanoTime() - start) / 1e9;
+
+            if (round >= warmUp) {
+                parser[round - warmUp] = bytes / 1e6 / parserTime;
+                scanner[round - warmUp] = bytes / 1e6 / scannerTime;
+            }
+        }
+
+        if (parserTokens.Count != scannerTokens.Count) {
+            throw new IllegalStateException(parserTokens.Count + " != " + scannerTokens.Count + " tokens");
+        }
+
+        System.out.println(String.format("%d files, %.1f MB, %d tokens", files.length, bytes / 1e6, scannerTokens.Count));
+        System.out.println(String.format("CParser  %8.1f MB/s", getMedian(parser)));
+        System.out.println(String.format("CScanner %8.1f MB/s", getMedian(scanner)));
+    }
+
+    private static void Scan(Parser parser, Counter counter) throws IOException {
+        parser.Scan(counter);
+    }
+
+    private static double getMedian(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static class Counter implements TokenSink {
+
+        long Count;
+
+        @Override
+        public void Add(int token, int line, int column, int character, int length) {
+            Count++;
+        }
+    }
+}
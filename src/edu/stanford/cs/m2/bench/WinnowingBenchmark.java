@@ -0,0 +1,110 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.bench;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.DequeWinnowingFingerPrinter;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrinter;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.document.fingerprint.WinnowingFingerPrinter;
+import edu.stanford.cs.m2.document.hash.HashStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ *  Compares WinnowingFingerPrinter against DequeWinnowingFingerPrinter on a
+ *  synthetic stream of hashes for window sizes from 3 to 100, and checks that
+ *  both select the same fingerprints.
+ *
+ *  Usage: WinnowingBenchmark [hashes] [rounds]
+ */
+public class WinnowingBenchmark {
+
+    private static final int[] Windows = {3, 4, 5, 8, 10, 16, 20, 32, 50, 64, 100};
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Document document = new Document("synthetic", null, null);
+        document.Hashes = randomHashes(size, 10, new Random(42));
+
+        System.out.println(String.format("%8s %14s %14s %9s", "window", "current ns/h", "deque ns/h", "speedup"));
+
+        for (int window : Windows) {
+            FingerPrinter current = new WinnowingFingerPrinter(window);
+            FingerPrinter deque = new DequeWinnowingFingerPrinter(window);
+
+            current.FingerPrint(document);
+            FingerPrints expected = document.FingerPrints;
+            deque.FingerPrint(document);
+            if (expected.Size != document.FingerPrints.Size
+                    || !Arrays.equals(Arrays.copyOf(expected.Data, 2 * expected.Size),
+                            Arrays.copyOf(document.FingerPrints.Data, 2 * document.FingerPrints.Size))) {
+                throw new IllegalStateException("Fingerprints differ for window " + window);
+            }
+
+            double currentTime = time(current, document, rounds);
+            double dequeTime = time(deque, document, rounds);
+
+            System.out.println(String.format("%8d %14.2f %14.2f %8.1fx", window,
+                    currentTime / size, dequeTime / size, currentTime / dequeTime));
+        }
+    }
+
+    private static double time(FingerPrinter fingerPrinter, Document document, int rounds) {
+        // Warm up before measuring
+        for (int i = 0; i < rounds; i++) {
+            fingerPrinter.FingerPrint(document);
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            fingerPrinter.FingerPrint(document);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static HashStream randomHashes(int size, int k, Random random) {
+        HashStream hashes = new HashStream(k, size);
+        for (int i = 0; i < size; i++) {
+            hashes.Add(random.nextLong(), i);
+        }
+        return hashes;
+    }
+}
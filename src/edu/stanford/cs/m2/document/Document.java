@@ -34,24 +34,28 @@
  */
 package edu.stanford.cs.m2.document;
 
-import edu.stanford.cs.m2.document.filter.Filter;
 import edu.stanford.cs.m2.document.fingerprint.FingerPrinter;
-import edu.stanford.cs.m2.document.hash.Hash;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.document.hash.HashStream;
 import edu.stanford.cs.m2.document.hash.Hasher;
 import edu.stanford.cs.m2.document.language.Language;
 import edu.stanford.cs.m2.document.parse.Parser;
 import edu.stanford.cs.m2.document.parse.Symbol;
+import edu.stanford.cs.m2.document.parse.TokenMask;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 public class Document {
     
     public String Name;
     public String Content;
+    public ByteBuffer Source;
+    public Charset Charset;
     public Language Language;
-    public List<Symbol> Symbols;
-    public List<Hash> Hashes;
+    public TokenStream Tokens;
+    public HashStream Hashes;
+    public FingerPrints FingerPrints;
     
     public Document(String name, String content, Language language) {
         Name = name;
@@ -59,35 +63,63 @@ public class Document {
         Language = language;
     }
     
+    /*
+     *  Creates a document that is parsed from its bytes in place. Its text
+     *  is only decoded, a snippet at a time, when it is rendered.
+     */
+    public Document(String name, ByteBuffer source, Charset charset, Language language) {
+        Name = name;
+        Source = source;
+        Charset = charset;
+        Language = language;
+    }
+    
+    /*
+     *  Symbols are not kept around after parsing; they are rebuilt from the
+     *  token stream and the document content whenever one is asked for.
+     */
     public Symbol getSymbol(int position) {
-        try {
-            return Symbols.get(position);
-        } catch (ArrayIndexOutOfBoundsException ex) {
+        if (position < 0 || position >= Tokens.Size) {
             throw new IllegalArgumentException(String.valueOf(position));
         }
+        return new Symbol(Tokens.getToken(position),
+                new FilePosition(Tokens.Lines[position], Tokens.Columns[position], Tokens.Characters[position]),
+                Slice(Tokens.Characters[position], Tokens.getEnd(position)));
     }
     
     public Symbol getSymbol(FilePosition position) {
-        for (Symbol symbol : Symbols) {
-            if (symbol.FilePosition.equals(position)) {
-                return symbol;
-            }
+        int index = Tokens.find(position.Character);
+        if (index == -1) {
+            throw new IllegalArgumentException(position.toString());
         }
-        throw new IllegalArgumentException(position.toString());
+        return getSymbol(index);
     }
     
-    public void Parse(Parser parser) throws IOException {
-        List<Symbol> list = new LinkedList<>();
-        Symbol nextSymbol = parser.yylex();
-        while (nextSymbol != null) {
-            list.add(nextSymbol);
-            nextSymbol = parser.yylex();
+    public String getText(int begin, int end) {
+        return Slice(Tokens.Characters[begin], Tokens.getEnd(end));
+    }
+    
+    private String Slice(int begin, int end) {
+        if (Content != null) {
+            return Content.substring(begin, end);
         }
-        Symbols = list;
+        ByteBuffer slice = Source.duplicate();
+        slice.limit(end);
+        slice.position(begin);
+        return Charset.decode(slice).toString();
+    }
+    
+    public void Parse(Parser parser) throws IOException {
+        Parse(parser, TokenMask.Empty);
     }
     
-    public void Filter(Filter filter) {
-        filter.Filter(this);
+    /*
+     *  Parses the document, leaving out the tokens in the mask.
+     */
+    public void Parse(Parser parser, TokenMask mask) throws IOException {
+        TokenStream tokens = new TokenStream(parser.getTokens());
+        parser.Scan(tokens, mask);
+        Tokens = tokens;
     }
     
     public void Hash(Hasher hasher) {
@@ -0,0 +1,167 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document;
+
+import edu.stanford.cs.m2.document.language.Language;
+import edu.stanford.cs.m2.document.language.exception.UnknownLanguageException;
+import edu.stanford.cs.m2.util.ByteReader;
+import edu.stanford.cs.m2.util.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ *  Reads and processes a batch of files on a work-stealing pool. At most
+ *  MaxInFlight documents are read but not yet processed at any time, which
+ *  bounds the memory held by file contents and intermediate token streams.
+ *
+ *  The returned documents are in the order of the given files whatever the
+ *  number of threads, so the document ids assigned by indexes built from
+ *  them are reproducible.
+ */
+public class Ingestor {
+
+    public Language Language;
+    public Charset Charset;
+    public Processor Processor;
+    public int Threads;
+    public int MaxInFlight;
+
+    public Ingestor(Language language, Charset charset, Processor processor, int threads) {
+        this(language, charset, processor, threads, 4 * threads);
+    }
+
+    public Ingestor(Language language, Charset charset, Processor processor, int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException(threads + ", " + maxInFlight);
+        }
+        Language = language;
+        Charset = charset;
+        Processor = processor;
+        Threads = threads;
+        MaxInFlight = maxInFlight;
+    }
+
+    public List<Document> Ingest(String[] files) throws IOException {
+        List<Document> documents = new ArrayList<>(files.length);
+
+        if (Threads == 1) {
+            for (String file : files) {
+                Document document = Load(file);
+                if (document != null) {
+                    documents.add(document);
+                }
+            }
+            return documents;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Threads);
+        Semaphore inFlight = new Semaphore(MaxInFlight);
+
+        try {
+            List<ForkJoinTask<Document>> tasks = new ArrayList<>(files.length);
+            for (String file : files) {
+                inFlight.acquire();
+                tasks.add(pool.submit(new Task(file, inFlight)));
+            }
+
+            for (ForkJoinTask<Document> task : tasks) {
+                Document document = task.get();
+                if (document != null) {
+                    documents.add(document);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return documents;
+    }
+
+    /*
+     *  Reads and processes a single file on the calling thread, or returns
+     *  null if it cannot be processed.
+     */
+    public Document Load(String file) throws IOException {
+        Document document = ByteReader.isSupported(Charset)
+                ? new Document(file, File.Map(file), Charset, Language)
+                : new Document(file, File.Read(file, Charset), Language);
+        try {
+            Processor.Process(document);
+        } catch (UnknownLanguageException ex) {
+            Logger.getLogger(Ingestor.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+        return document;
+    }
+
+    private class Task implements Callable<Document> {
+
+        private final String Path;
+        private final Semaphore InFlight;
+
+        Task(String file, Semaphore inFlight) {
+            Path = file;
+            InFlight = inFlight;
+        }
+
+        @Override
+        public Document call() throws IOException {
+            try {
+                return Load(Path);
+            } finally {
+                InFlight.release();
+            }
+        }
+    }
+}
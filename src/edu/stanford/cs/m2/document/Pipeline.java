@@ -0,0 +1,117 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document;
+
+import edu.stanford.cs.m2.document.filter.Filter;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.document.fingerprint.Winnower;
+import edu.stanford.cs.m2.document.hash.RollingHash;
+import edu.stanford.cs.m2.document.language.Support;
+import edu.stanford.cs.m2.document.language.exception.UnknownLanguageException;
+import edu.stanford.cs.m2.document.parse.Parser;
+import edu.stanford.cs.m2.document.parse.Token;
+import edu.stanford.cs.m2.document.parse.TokenSink;
+import java.io.IOException;
+
+/*
+ *  Fingerprints a document in a single pass: every token reported by the
+ *  lexer goes straight through a K-token rolling hash window and a winnowing
+ *  window, and only the selected fingerprints are kept. No token
+ *  stream or hash list is built, so the working memory per document is
+ *  O(K + Window) in addition to its fingerprints. Filtered tokens are left out
+ *  by the lexer itself and never reach the pipeline.
+ *
+ *  The fingerprints are identical to those of Parse, Filter,
+ *  KGramRollingHasher and a winnowing FingerPrinter run one after the other.
+ *  Since the token stream is not kept, Tokenize must be called on a document
+ *  before any of its snippets are rendered.
+ */
+public class Pipeline implements Processor {
+
+    public Filter Filter;
+    public int K;
+    public int Window;
+
+    public Pipeline(Filter filter, int k, int window) {
+        Filter = filter;
+        K = k;
+        Window = window;
+    }
+
+    @Override
+    public void Process(Document document) throws IOException, UnknownLanguageException {
+        Parser parser = Support.getParser(document.Language, document);
+
+        FingerPrints fingerPrints = new FingerPrints(K, 0);
+        parser.Scan(new Stages(parser.getTokens(), fingerPrints), Filter.getMask());
+
+        document.Tokens = null;
+        document.Hashes = null;
+        document.FingerPrints = fingerPrints;
+    }
+
+    /*
+     *  The hash and winnowing windows of a single document, fed one
+     *  token at a time by the lexer.
+     */
+    private class Stages implements TokenSink {
+
+        private final RollingHash Hash;
+        private final Winnower Winnower;
+        private int Position;
+
+        Stages(Token[] vocabulary, FingerPrints fingerPrints) {
+            Hash = new RollingHash(K, vocabulary);
+            Winnower = new Winnower(Window, fingerPrints);
+        }
+
+        @Override
+        public void Add(int token, int line, int column, int character, int length) {
+            Hash.Add(token);
+            Position++;
+            if (Hash.isFull()) {
+                Winnower.Add(Hash.getValue(), Position - K);
+            }
+        }
+    }
+
+    /*
+     *  Rebuilds the filtered token stream of a processed document.
+     */
+    public void Tokenize(Document document) throws IOException, UnknownLanguageException {
+        document.Parse(Support.getParser(document.Language, document), Filter.getMask());
+    }
+}
@@ -37,18 +37,38 @@ package edu.stanford.cs.m2.document;
 
 import edu.stanford.cs.m2.document.parse.Symbol;
 
+/*
+ *  A contiguous run of tokens, from Begin to End inclusive, identified by
+ *  their indices in the token stream of the document.
+ */
 public class Snippet {
     public Document Document;
-    public Symbol Begin;
-    public Symbol End;
+    public int Begin;
+    public int End;
     
-    public Snippet(Document document, Symbol begin, Symbol end) {
+    public Snippet(Document document, int begin, int end) {
         Document = document;
         Begin = begin;
         End = end;
     }
     
+    public Symbol getBegin() {
+        return Document.getSymbol(Begin);
+    }
+    
+    public Symbol getEnd() {
+        return Document.getSymbol(End);
+    }
+    
+    public int getLength() {
+        return End - Begin + 1;
+    }
+    
+    public String getText() {
+        return Document.getText(Begin, End);
+    }
+    
     public boolean equals(Snippet snippet) {
-        return Document.equals(snippet.Document) && Begin.equals(snippet.Begin) && End.equals(snippet.End);
+        return Document.equals(snippet.Document) && Begin == snippet.Begin && End == snippet.End;
     }
 }
@@ -0,0 +1,115 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document;
+
+import edu.stanford.cs.m2.document.parse.Token;
+import edu.stanford.cs.m2.document.parse.TokenSink;
+import java.util.Arrays;
+
+/*
+ *  Compact struct-of-arrays representation of the tokens of a document. Token
+ *  i is described by Tokens[i] (an ordinal into Vocabulary), Lines[i],
+ *  Columns[i], Characters[i] (offset of its first character in the document)
+ *  and Lengths[i] (number of source characters it spans).
+ */
+public class TokenStream implements TokenSink {
+
+    public Token[] Vocabulary;
+    public short[] Tokens;
+    public int[] Lines;
+    public int[] Columns;
+    public int[] Characters;
+    public int[] Lengths;
+    public int Size;
+
+    private static final int DefaultCapacity = 256;
+
+    public TokenStream(Token[] vocabulary) {
+        this(vocabulary, DefaultCapacity);
+    }
+
+    public TokenStream(Token[] vocabulary, int capacity) {
+        Vocabulary = vocabulary;
+        Tokens = new short[capacity];
+        Lines = new int[capacity];
+        Columns = new int[capacity];
+        Characters = new int[capacity];
+        Lengths = new int[capacity];
+    }
+
+    public void Add(Token token, int line, int column, int character, int length) {
+        Add(token.ordinal(), line, column, character, length);
+    }
+
+    @Override
+    public void Add(int token, int line, int column, int character, int length) {
+        if (Size == Tokens.length) {
+            grow();
+        }
+        Tokens[Size] = (short) token;
+        Lines[Size] = line;
+        Columns[Size] = column;
+        Characters[Size] = character;
+        Lengths[Size] = length;
+        Size++;
+    }
+
+    public Token getToken(int position) {
+        return Vocabulary[Tokens[position]];
+    }
+
+    public int getEnd(int position) {
+        return Characters[position] + Lengths[position];
+    }
+
+    /*
+     *  Returns the index of the token starting at the given character offset,
+     *  or -1 if no token starts there.
+     */
+    public int find(int character) {
+        int index = Arrays.binarySearch(Characters, 0, Size, character);
+        return index >= 0 ? index : -1;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DefaultCapacity, Tokens.length * 2);
+        Tokens = Arrays.copyOf(Tokens, capacity);
+        Lines = Arrays.copyOf(Lines, capacity);
+        Columns = Arrays.copyOf(Columns, capacity);
+        Characters = Arrays.copyOf(Characters, capacity);
+        Lengths = Arrays.copyOf(Lengths, capacity);
+    }
+}
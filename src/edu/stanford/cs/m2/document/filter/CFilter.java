@@ -35,40 +35,28 @@
 
 package edu.stanford.cs.m2.document.filter;
 
-import edu.stanford.cs.m2.document.Document;
 import edu.stanford.cs.m2.document.parse.CToken;
-import edu.stanford.cs.m2.document.parse.Symbol;
-import edu.stanford.cs.m2.document.parse.Token;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import edu.stanford.cs.m2.document.parse.TokenMask;
 
 public class CFilter implements Filter {
 
-    private static final String FilterList = "LEFT_BRACE,RIGHT_BRACE,PREPROCESSOR,COMMENT";
-    private static final Set<Token> tokensToFilter = new HashSet<>();
+    public static final String DefaultFilterList = "LEFT_BRACE,RIGHT_BRACE,PREPROCESSOR,COMMENT";
+    
+    public final TokenMask Mask;
 
     public CFilter() {
-        for (String token : FilterList.split(",")) {
-            try {
-                tokensToFilter.add(CToken.valueOf(token));
-            } catch (IllegalArgumentException ex) {
-                Logger.getLogger(Document.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
+        this(DefaultFilterList);
     }
 
-    @Override
-    public void Filter(Document document) {
-        Iterator<Symbol> it = document.Symbols.iterator();
+    /*
+     *  Filters the tokens named in a comma-separated list of CToken names.
+     */
+    public CFilter(String filterList) {
+        Mask = TokenMask.Parse(filterList, CToken.values());
+    }
 
-        while (it.hasNext()) {
-            Symbol symbol = it.next();
-            if (tokensToFilter.contains(symbol.Token)) {
-                it.remove();
-            }
-        }
+    @Override
+    public TokenMask getMask() {
+        return Mask;
     }
 }
@@ -35,8 +35,12 @@
 
 package edu.stanford.cs.m2.document.filter;
 
-import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.parse.TokenMask;
 
 public interface Filter {
-    public void Filter(Document document);
+
+    /*
+     *  The tokens to leave out, which lexers skip as they scan.
+     */
+    public TokenMask getMask();
 }
@@ -0,0 +1,70 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document.fingerprint;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.hash.HashStream;
+
+/*
+ *  Winnowing in a single pass over the hashes, keeping the window minimum in a
+ *  monotonic deque (see Winnower). Selects the same fingerprints as
+ *  WinnowingFingerPrinter in amortized O(1) per position, regardless of the
+ *  window size.
+ */
+public class DequeWinnowingFingerPrinter implements FingerPrinter {
+
+    int Window;
+
+    public DequeWinnowingFingerPrinter(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException(String.valueOf(window));
+        }
+        Window = window;
+    }
+
+    @Override
+    public void FingerPrint(Document document) {
+        HashStream hashes = document.Hashes;
+        FingerPrints fingerPrints = new FingerPrints(hashes.K, 2 * hashes.Size / (Window + 1) + 1);
+        Winnower winnower = new Winnower(Window, fingerPrints);
+
+        for (int i = 0; i < hashes.Size; i++) {
+            winnower.Add(hashes.Values[i], hashes.Positions[i]);
+        }
+
+        document.FingerPrints = fingerPrints;
+    }
+}
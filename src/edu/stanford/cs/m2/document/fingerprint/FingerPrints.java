@@ -0,0 +1,84 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document.fingerprint;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import java.util.Arrays;
+
+/*
+ *  Fingerprints selected from the k-gram hashes of a document, packed two
+ *  longs per fingerprint: Data[2i] is the hash and Data[2i + 1] the token
+ *  index at which its k-gram starts.
+ */
+public class FingerPrints {
+
+    public long[] Data;
+    public int Size;
+    public int K;
+
+    public FingerPrints(int k, int capacity) {
+        K = k;
+        Data = new long[2 * Math.max(1, capacity)];
+    }
+
+    public void Add(long hash, int position) {
+        if (2 * Size == Data.length) {
+            Data = Arrays.copyOf(Data, Data.length * 2);
+        }
+        Data[2 * Size] = hash;
+        Data[2 * Size + 1] = position;
+        Size++;
+    }
+
+    public void Copy(int from, int to) {
+        Data[2 * to] = Data[2 * from];
+        Data[2 * to + 1] = Data[2 * from + 1];
+    }
+
+    public long getHash(int index) {
+        return Data[2 * index];
+    }
+
+    public int getPosition(int index) {
+        return (int) Data[2 * index + 1];
+    }
+
+    public Snippet getSnippet(Document document, int index) {
+        int position = getPosition(index);
+        return new Snippet(document, position, position + K - 1);
+    }
+}
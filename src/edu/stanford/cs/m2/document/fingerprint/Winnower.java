@@ -0,0 +1,106 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document.fingerprint;
+
+/*
+ *  Streaming winnowing over hashes fed one at a time. A monotonic deque holds
+ *  the hashes of the current window that are strictly smaller than every hash
+ *  to their right, so its head is always the rightmost minimum of the window.
+ *  Each hash enters and leaves the deque once, giving amortized O(1) work per
+ *  hash and O(Window) memory.
+ *
+ *  A minimum is recorded when the previously recorded one leaves the window or
+ *  a strictly smaller hash enters it, as in WinnowingFingerPrinter.
+ */
+public class Winnower {
+
+    private final int Window;
+    private final FingerPrints Output;
+
+    // Ring buffer of (index, hash, position); a window never holds more than
+    // Window + 1 entries between a push and the expiry of the head
+    private final int mask;
+    private final int[] indices;
+    private final long[] values;
+    private final int[] positions;
+    private int head;
+    private int tail;
+
+    private int count;
+    private int previousIndex = -1;
+    private long previousHash;
+
+    public Winnower(int window, FingerPrints output) {
+        if (window < 1) {
+            throw new IllegalArgumentException(String.valueOf(window));
+        }
+        Window = window;
+        Output = output;
+        mask = Integer.highestOneBit(window) * 2 - 1;
+        indices = new int[mask + 1];
+        values = new long[mask + 1];
+        positions = new int[mask + 1];
+    }
+
+    public void Add(long hash, int position) {
+        int j = count++;
+
+        while (tail != head && values[(tail - 1) & mask] >= hash) {
+            tail--;
+        }
+        indices[tail & mask] = j;
+        values[tail & mask] = hash;
+        positions[tail & mask] = position;
+        tail++;
+
+        int i = j - Window + 1;
+        if (i < 0) {
+            return;
+        }
+
+        if (indices[head & mask] < i) {
+            head++;
+        }
+
+        int minIndex = indices[head & mask];
+        long minHash = values[head & mask];
+        if (i > previousIndex || minHash < previousHash) {
+            Output.Add(minHash, positions[head & mask]);
+            previousIndex = minIndex;
+            previousHash = minHash;
+        }
+    }
+}
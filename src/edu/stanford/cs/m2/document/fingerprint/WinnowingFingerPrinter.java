@@ -35,9 +35,7 @@
 package edu.stanford.cs.m2.document.fingerprint;
 
 import edu.stanford.cs.m2.document.Document;
-import edu.stanford.cs.m2.document.hash.Hash;
-import java.util.LinkedList;
-import java.util.List;
+import edu.stanford.cs.m2.document.hash.HashStream;
 
 public class WinnowingFingerPrinter implements FingerPrinter {
     
@@ -49,31 +47,32 @@ public class WinnowingFingerPrinter implements FingerPrinter {
     
     @Override
     public void FingerPrint(Document document) {
-        List<Hash> newHashes = new LinkedList<>();
-        Hash previousHash = null;
+        HashStream hashes = document.Hashes;
+        FingerPrints fingerPrints = new FingerPrints(hashes.K, hashes.Size / Window + 1);
+        boolean selected = false;
+        long previousHash = 0;
         int previousIndex = -1;
         
-        for (int i = 0; i < document.Hashes.size() - Window + 1; i++) {
+        for (int i = 0; i < hashes.Size - Window + 1; i++) {
             
-            Hash minHash = document.Hashes.get(i);
-            int minIndex = 0;
+            long minHash = hashes.Values[i];
+            int minIndex = i;
             
-            int offset = i;
-            for (Hash hash : document.Hashes.subList(i, i + Window)) {
-                if (hash.Value <= minHash.Value) {
-                    minHash = hash;
+            for (int offset = i; offset < i + Window; offset++) {
+                if (hashes.Values[offset] <= minHash) {
+                    minHash = hashes.Values[offset];
                     minIndex = offset;
                 }
-                offset++;
             }
             
-            if (i > previousIndex || previousHash == null || minHash.Value < previousHash.Value) {
-                newHashes.add(minHash);
+            if (i > previousIndex || !selected || minHash < previousHash) {
+                fingerPrints.Add(minHash, hashes.Positions[minIndex]);
                 previousIndex = minIndex;
                 previousHash = minHash;
+                selected = true;
             }
         }
         
-        document.Hashes = newHashes;
+        document.FingerPrints = fingerPrints;
     }
 }
@@ -0,0 +1,72 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document.hash;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import java.util.Arrays;
+
+/*
+ *  Hash values of the k-grams of a document. Values[i] is the hash of the K
+ *  tokens starting at token index Positions[i].
+ */
+public class HashStream {
+
+    public long[] Values;
+    public int[] Positions;
+    public int Size;
+    public int K;
+
+    public HashStream(int k, int capacity) {
+        K = k;
+        Values = new long[Math.max(1, capacity)];
+        Positions = new int[Math.max(1, capacity)];
+    }
+
+    public void Add(long value, int position) {
+        if (Size == Values.length) {
+            Values = Arrays.copyOf(Values, Size * 2);
+            Positions = Arrays.copyOf(Positions, Size * 2);
+        }
+        Values[Size] = value;
+        Positions[Size] = position;
+        Size++;
+    }
+
+    public Snippet getSnippet(Document document, int index) {
+        return new Snippet(document, Positions[index], Positions[index] + K - 1);
+    }
+}
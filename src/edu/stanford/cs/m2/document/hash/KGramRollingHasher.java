@@ -35,55 +35,36 @@
 package edu.stanford.cs.m2.document.hash;
 
 import edu.stanford.cs.m2.document.Document;
-import edu.stanford.cs.m2.document.Snippet;
-import edu.stanford.cs.m2.document.parse.Symbol;
-import java.util.LinkedList;
-import java.util.List;
+import edu.stanford.cs.m2.document.TokenStream;
 
-/* Many thanks to http://stackoverflow.com/questions/711770/fast-implementation-of-rolling-hash */
+/*
+ *  Hashes every window of K consecutive tokens in a single pass over the
+ *  token stream (see RollingHash).
+ */
 public class KGramRollingHasher implements Hasher {
 
     public int K;
-    public Document Document;
 
     public KGramRollingHasher(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException(String.valueOf(k));
+        }
         K = k;
     }
 
     @Override
     public void Hash(Document document) {
-        Document = document;
-        
-        Hash firstHash = basicHash(document.Symbols.subList(0, K));
-
-        List<Hash> hashes = new LinkedList<>();
-
-        hashes.add(firstHash);
+        TokenStream tokens = document.Tokens;
+        HashStream hashes = new HashStream(K, Math.max(0, tokens.Size - K + 1));
+        RollingHash hash = new RollingHash(K, tokens.Vocabulary);
 
-        Hash previousHash = firstHash;
-
-        for (int i = K; i < document.Symbols.size(); i++) {
-            Hash newHash = new Hash((previousHash.Value * multiplier
-                    + document.Symbols.get(i).Token.toInt()) % modulus,
-                    new Snippet(document, document.getSymbol(i - K + 1),
-                            document.getSymbol(i)));
-            hashes.add(newHash);
-            previousHash = newHash;
+        for (int i = 0; i < tokens.Size; i++) {
+            hash.Add(tokens.Tokens[i]);
+            if (hash.isFull()) {
+                hashes.Add(hash.getValue(), i - K + 1);
+            }
         }
 
         document.Hashes = hashes;
     }
-
-    private static final int multiplier = 1103515245;
-    private static final int modulus = 1 << 31;
-
-    private Hash basicHash(List<Symbol> input) {
-        int ret = 0;
-        for (Symbol symbol : input) {
-            ret *= multiplier;
-            ret += symbol.Token.toInt();
-            ret %= modulus;
-        }
-        return new Hash(ret, new Snippet(Document, input.get(0), input.get(input.size() - 1)));
-    }
 }
@@ -0,0 +1,121 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.document.hash;
+
+import edu.stanford.cs.m2.document.parse.Token;
+
+/*
+ *  Karp-Rabin hash of the last K tokens fed to it. The hash of tokens
+ *  c[i..i+K-1] is
+ *
+ *      H(i) = T(c[i]) * B^(K-1) + T(c[i+1]) * B^(K-2) + ... + T(c[i+K-1])
+ *
+ *  modulo 2^64, where T scrambles token codes into 64-bit values. Adding a
+ *  token removes the outgoing term and appends the incoming one, so the value
+ *  depends on exactly the K tokens of the window.
+ */
+public class RollingHash {
+
+    private final int K;
+    private final long[] table;
+    private final long[] window;
+    private final long outgoing;
+    private long hash;
+    private int count;
+
+    private static final long multiplier = 0x100000001B3L;
+
+    public RollingHash(int k, Token[] vocabulary) {
+        if (k < 1) {
+            throw new IllegalArgumentException(String.valueOf(k));
+        }
+        K = k;
+        window = new long[k];
+
+        table = new long[vocabulary.length];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = mix(vocabulary[i].toInt());
+        }
+
+        // B^(K-1), the weight of the token leaving the window
+        long power = 1;
+        for (int i = 1; i < k; i++) {
+            power *= multiplier;
+        }
+        outgoing = power;
+    }
+
+    /*
+     *  Slides the window over the token with the given ordinal.
+     */
+    public void Add(int token) {
+        int slot = count % K;
+        long value = table[token];
+        if (count >= K) {
+            hash -= window[slot] * outgoing;
+        }
+        hash = hash * multiplier + value;
+        window[slot] = value;
+        count++;
+    }
+
+    public boolean isFull() {
+        return count >= K;
+    }
+
+    public long getValue() {
+        return mix(hash);
+    }
+
+    public void Reset() {
+        hash = 0;
+        count = 0;
+    }
+
+    /*
+     *  Spreads the bits of a value so that every input bit affects every
+     *  output bit (MurmurHash3 finalizer). Minima selected during winnowing
+     *  and MinHash sketches rely on it being uniformly distributed.
+     */
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
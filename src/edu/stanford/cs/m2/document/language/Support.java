@@ -39,6 +39,7 @@ import edu.stanford.cs.m2.document.filter.CFilter;
 import edu.stanford.cs.m2.document.filter.Filter;
 import edu.stanford.cs.m2.document.language.exception.UnknownLanguageException;
 import edu.stanford.cs.m2.document.parse.CParser;
+import edu.stanford.cs.m2.document.parse.CScanner;
 import edu.stanford.cs.m2.document.parse.CToken;
 import edu.stanford.cs.m2.document.parse.Parser;
 import edu.stanford.cs.m2.util.StringStreamConverter;
@@ -48,16 +49,47 @@ import java.nio.charset.Charset;
 
 public class Support {
 
+    // The scanners of each thread, reset onto every document it parses
+    private static final ThreadLocal<CScanner> Scanners = new ThreadLocal<>();
+    private static final ThreadLocal<CParser> Parsers = new ThreadLocal<>();
+
+    /*
+     *  Returns the parser of the calling thread for the language, reset onto
+     *  the document, so that its buffers are allocated once per thread
+     *  rather than once per document. The parser is only valid until the
+     *  next call on the same thread.
+     */
     public static Parser getParser(Language lang, Document document) throws UnknownLanguageException {
-        Reader reader = new InputStreamReader(StringStreamConverter.toStream(document.Content), Charset.forName("US-ASCII"));
         switch (lang) {
             case C:
-                return new CParser(reader);
+                // Documents held as bytes are scanned in place
+                if (document.Source != null) {
+                    CScanner scanner = Scanners.get();
+                    if (scanner == null) {
+                        scanner = new CScanner(document.Source);
+                        Scanners.set(scanner);
+                    } else {
+                        scanner.Reset(document.Source);
+                    }
+                    return scanner;
+                }
+                CParser parser = Parsers.get();
+                if (parser == null) {
+                    parser = new CParser(getReader(document));
+                    Parsers.set(parser);
+                } else {
+                    parser.yyreset(getReader(document));
+                }
+                return parser;
             default:
                 throw new UnknownLanguageException(lang);
         }
     }
 
+    private static Reader getReader(Document document) {
+        return new InputStreamReader(StringStreamConverter.toStream(document.Content), Charset.forName("US-ASCII"));
+    }
+
     public static Filter getFilter(Language lang) throws UnknownLanguageException {
         switch (lang) {
             case C:
@@ -67,6 +99,35 @@ public class Support {
         }
     }
     
+    /*
+     *  The comma-separated token names that the default filter of the
+     *  language leaves out.
+     */
+    public static String getDefaultFilterList(Language lang) throws UnknownLanguageException {
+        switch (lang) {
+            case C:
+                return CFilter.DefaultFilterList;
+            default:
+                throw new UnknownLanguageException(lang);
+        }
+    }
+    
+    /*
+     *  The filter for a comma-separated list of token names of the language,
+     *  or the language's default filter if the list is null.
+     */
+    public static Filter getFilter(Language lang, String filterList) throws UnknownLanguageException {
+        if (filterList == null) {
+            return getFilter(lang);
+        }
+        switch (lang) {
+            case C:
+                return new CFilter(filterList);
+            default:
+                throw new UnknownLanguageException(lang);
+        }
+    }
+    
     public static int getTokenEnumSize(Language lang) throws UnknownLanguageException {
         switch (lang) {
             case C:
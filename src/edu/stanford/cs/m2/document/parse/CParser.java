@@ -462,13 +462,60 @@ public class CParser extends Parser {
 
   /* user code: */
   StringBuffer string = new StringBuffer();
+  int stringLine;
+  int stringColumn;
+  int stringCharacter;
+  TokenSink sink;
+  TokenMask mask;
+
+  /* Returned by yylex() in place of the tokens reported to a sink */
+  private static final Symbol Reported = new Symbol(null, null);
+
+  public Token[] getTokens() {
+    return CToken.values();
+  }
+
+  /*
+   *  Reports every token that is not in the mask to the sink as it is
+   *  matched. No Symbol, FilePosition or String is created for it; the text
+   *  of identifiers and literals is sliced out of the document only when it
+   *  is rendered.
+   */
+  @Override
+  public void Scan(TokenSink tokenSink, TokenMask tokenMask) throws java.io.IOException {
+    sink = tokenSink;
+    mask = tokenMask;
+    try {
+      while (yylex() != null) {
+      }
+    } finally {
+      sink = null;
+      mask = null;
+    }
+  }
 
   private Symbol symbol(Token token) {
+    if (sink != null) {
+      if (!mask.Contains(token.ordinal())) {
+        sink.Add(token.ordinal(), yyline, yycolumn, yychar, yylength());
+      }
+      return Reported;
+    }
     return new Symbol(token, new FilePosition(yyline, yycolumn, yychar), yytext());
   }
 
-  private Symbol symbol(Token token, String value) {
-    return new Symbol(token, new FilePosition(yyline, yycolumn, yychar), value);
+  /*
+   *  The value of a string literal keeps its escapes, so it is as long as
+   *  the literal itself with its quotes.
+   */
+  private Symbol stringSymbol(Token token) {
+    if (sink != null) {
+      if (!mask.Contains(token.ordinal())) {
+        sink.Add(token.ordinal(), stringLine, stringColumn, stringCharacter, yychar + yylength() - stringCharacter);
+      }
+      return Reported;
+    }
+    return new Symbol(token, new FilePosition(stringLine, stringColumn, stringCharacter), ' ' + string.toString() + ' ');
   }
 
 
@@ -866,7 +913,11 @@ public class CParser extends Parser {
           }
         case 100: break;
         case 9: 
-          { string.setLength(0); yybegin(STRING);
+          { string.setLength(0);
+                                stringLine = yyline;
+                                stringColumn = yycolumn;
+                                stringCharacter = yychar;
+                                yybegin(STRING);
           }
         case 101: break;
         case 10: 
@@ -950,16 +1001,16 @@ public class CParser extends Parser {
           }
         case 121: break;
         case 30: 
-          { string.append(yytext());
+          { if (sink == null) string.append(yytext());
           }
         case 122: break;
         case 31: 
-          { string.append("\\\'");
+          { string.append("\\");
           }
         case 123: break;
         case 32: 
           { yybegin(YYINITIAL);
-                                return symbol(CToken.STRING_LITERAL, ' ' + string.toString() + ' ');
+                                return stringSymbol(CToken.STRING_LITERAL);
           }
         case 124: break;
         case 33: 
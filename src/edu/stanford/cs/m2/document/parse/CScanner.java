@@ -0,0 +1,658 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.document.parse;
+
+import edu.stanford.cs.m2.document.FilePosition;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ *  Hand-tuned scanner for the C lexer of C.flex, for documents held as bytes.
+ *  The whole buffer is scanned in place, so there is no refill, and every
+ *  token starts with a lookup in a 128-entry table of character classes
+ *  instead of the packed Unicode map of CParser. Whitespace, identifiers,
+ *  comments and strings are consumed by tight loops over the bytes.
+ *
+ *  It reports exactly the tokens, positions and values of CParser reading
+ *  the same bytes through a ByteReader, including the corner cases of the
+ *  JFlex rules: "/**" only starts a comment when the stars are closed by a
+ *  slash, comments and directives must end before the end of the file, and
+ *  a carriage return or vertical tab between tokens, or a line break inside
+ *  a string, is an error. Bytes above 0x7F read as '?'.
+ */
+public class CScanner extends Parser {
+
+    // Character classes
+    private static final int IdentifierStart = 1;
+    private static final int IdentifierPart = 2;
+    private static final int Digit = 4;
+    private static final int HexDigit = 8;
+    private static final int IntegerSuffix = 16;
+    private static final int FloatSuffix = 32;
+
+    private static final byte[] Classes = new byte[128];
+
+    // Single-character tokens, by character
+    private static final CToken[] Singles = new CToken[128];
+
+    // Keywords by first letter, as the ordinals of their tokens
+    private static final int[][] Keywords = new int[128][];
+    private static final byte[][] KeywordText = new byte[CToken.WHILE.ordinal() + 1][];
+
+    private static final CToken[] Tokens = CToken.values();
+
+    // The message of CParser when no rule matches
+    private static final String NoMatch = "Error: could not match input";
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if (Character.isLetter(c) || c == '_') {
+                Classes[c] |= IdentifierStart | IdentifierPart;
+            }
+            if (c >= '0' && c <= '9') {
+                Classes[c] |= IdentifierPart | Digit | HexDigit;
+            }
+            if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+                Classes[c] |= HexDigit;
+            }
+        }
+        for (char c : "uUlL".toCharArray()) {
+            Classes[c] |= IntegerSuffix;
+        }
+        for (char c : "fFlL".toCharArray()) {
+            Classes[c] |= FloatSuffix;
+        }
+
+        String singles = ";{},:=()[].&!~-+*/%<>^|?";
+        CToken[] tokens = {CToken.SEMICOLON, CToken.LEFT_BRACE, CToken.RIGHT_BRACE, CToken.COMMA,
+            CToken.COLON, CToken.ASSIGN, CToken.LEFT_BRACKET, CToken.RIGHT_BRACKET, CToken.LEFT_SQBR,
+            CToken.RIGHT_SQBR, CToken.PERIOD, CToken.AMPERSAND, CToken.EXCLAMATION, CToken.TILDE,
+            CToken.MINUS, CToken.PLUS, CToken.ASTERISK, CToken.SLASH, CToken.MOD, CToken.LT, CToken.GT,
+            CToken.HAT, CToken.OR, CToken.QUESTION};
+        for (int i = 0; i < tokens.length; i++) {
+            Singles[singles.charAt(i)] = tokens[i];
+        }
+
+        // The keywords are the tokens up to WHILE, named after their text
+        for (int token = 0; token < KeywordText.length; token++) {
+            String text = Tokens[token].name().toLowerCase();
+            KeywordText[token] = text.getBytes(StandardCharsets.US_ASCII);
+            int[] bucket = Keywords[text.charAt(0)];
+            bucket = bucket == null ? new int[1] : Arrays.copyOf(bucket, bucket.length + 1);
+            bucket[bucket.length - 1] = token;
+            Keywords[text.charAt(0)] = bucket;
+        }
+    }
+
+    private ByteBuffer Source;
+    private int Begin;
+    private int End;
+    private int Position;
+
+    private int Line;
+    private int Column;
+    private boolean Return;
+
+    // The last token read
+    private int Token;
+    private int Start;
+    private int Length;
+    private int TokenLine;
+    private int TokenColumn;
+
+    public CScanner(ByteBuffer source) {
+        Reset(source);
+    }
+
+    public CScanner(byte[] source) {
+        Reset(ByteBuffer.wrap(source));
+    }
+
+    /*
+     *  Starts over on a new document. The bytes are read in place with
+     *  absolute gets, so mapped documents are never copied into the heap.
+     */
+    public final void Reset(ByteBuffer source) {
+        Source = source;
+        Begin = source.position();
+        End = source.limit();
+        Position = Begin;
+        Line = 0;
+        Column = 0;
+        Return = false;
+    }
+
+    @Override
+    public Token[] getTokens() {
+        return CToken.values();
+    }
+
+    @Override
+    public Symbol yylex() {
+        if (!Next()) {
+            return null;
+        }
+        return new Symbol(Tokens[Token], new FilePosition(TokenLine, TokenColumn, Start), getValue());
+    }
+
+    @Override
+    public void Scan(TokenSink sink, TokenMask mask) {
+        while (Next()) {
+            if (!mask.Contains(Token)) {
+                sink.Add(Token, TokenLine, TokenColumn, Start, Length);
+            }
+        }
+    }
+
+    /*
+     *  The text of the last token, as CParser would return it: the quotes of
+     *  a string literal are replaced by spaces.
+     */
+    private String getValue() {
+        char[] value = new char[Length];
+        int offset = Begin + Start;
+        for (int i = 0; i < Length; i++) {
+            byte b = Source.get(offset + i);
+            value[i] = b >= 0 ? (char) b : '?';
+        }
+        if (Token == CToken.STRING_LITERAL.ordinal()) {
+            value[0] = ' ';
+            value[Length - 1] = ' ';
+        }
+        return new String(value);
+    }
+
+    /*
+     *  Reads the next token, or returns false at the end of the document.
+     */
+    private boolean Next() {
+        ByteBuffer source = Source;
+        int end = End;
+        int p = Position;
+
+        // Whitespace, counted in locals
+        int line = Line;
+        int column = Column;
+        boolean afterReturn = Return;
+        int c;
+        while (true) {
+            if (p == end) {
+                Position = p;
+                return false;
+            }
+            c = source.get(p);
+            if (c == ' ' || c == '\t') {
+                column++;
+            } else if (c == '\n') {
+                if (!afterReturn) {
+                    line++;
+                }
+                column = 0;
+            } else if (c == '\f') {
+                line++;
+                column = 0;
+            } else {
+                break;
+            }
+            afterReturn = false;
+            p++;
+        }
+        Line = line;
+        Column = column;
+        Return = afterReturn;
+
+        int start = p;
+        int token;
+        boolean multiline = false;
+        if (c < 0) {
+            c = '?';
+        }
+        int flags = Classes[c];
+
+        if ((flags & IdentifierStart) != 0) {
+            if (c == 'L' && p + 1 < end && source.get(p + 1) == '\'' && getCharacterEnd(p + 1) > 0) {
+                p = getCharacterEnd(p + 1);
+                token = CToken.CONSTANT.ordinal();
+                multiline = true;
+            } else {
+                p++;
+                while (p < end && (c = source.get(p)) >= 0 && (Classes[c] & IdentifierPart) != 0) {
+                    p++;
+                }
+                token = getKeyword(start, p - start);
+            }
+        } else if ((flags & Digit) != 0) {
+            p = getNumberEnd(p);
+            token = CToken.CONSTANT.ordinal();
+        } else {
+            int next = p + 1 < end ? source.get(p + 1) : -1;
+            CToken single = Singles[c];
+            p++;
+            switch (c) {
+                case '/':
+                    if (next == '*') {
+                        int q = getBlockCommentEnd(start);
+                        if (q > 0) {
+                            p = q;
+                            single = CToken.COMMENT;
+                            multiline = true;
+                        }
+                    } else if (next == '/') {
+                        int q = getLineCommentEnd(start);
+                        if (q > 0) {
+                            p = q;
+                            single = CToken.COMMENT;
+                            multiline = true;
+                        }
+                    } else if (next == '=') {
+                        p++;
+                        single = CToken.DIV_ASSIGN;
+                    }
+                    break;
+                case '"':
+                    p = getStringEnd(start);
+                    if (p < 0) {
+                        Position = end;
+                        return false;
+                    }
+                    single = CToken.STRING_LITERAL;
+                    multiline = true;
+                    break;
+                case '\'':
+                    int q = getCharacterEnd(start);
+                    if (q > 0) {
+                        p = q;
+                        single = CToken.CONSTANT;
+                        multiline = true;
+                    }
+                    break;
+                case '#':
+                    q = start + 1;
+                    while (q < end && source.get(q) != '\n' && source.get(q) != '\r') {
+                        q++;
+                    }
+                    if (q < end) {
+                        p = q + 1;
+                        single = CToken.PREPROCESSOR;
+                        multiline = true;
+                    }
+                    break;
+                case '.':
+                    if (next >= '0' && next <= '9') {
+                        p = getFractionEnd(p);
+                        single = CToken.CONSTANT;
+                    } else if (next == '.' && p + 1 < end && source.get(p + 1) == '.') {
+                        p += 2;
+                        single = CToken.ELLIPSIS;
+                    }
+                    break;
+                case '>':
+                    if (next == '>') {
+                        p++;
+                        single = CToken.RIGHT_OP;
+                        if (p < end && source.get(p) == '=') {
+                            p++;
+                            single = CToken.RIGHT_ASSIGN;
+                        }
+                    } else if (next == '=') {
+                        p++;
+                        single = CToken.GE_OP;
+                    }
+                    break;
+                case '<':
+                    if (next == '<') {
+                        p++;
+                        single = CToken.LEFT_OP;
+                        if (p < end && source.get(p) == '=') {
+                            p++;
+                            single = CToken.LEFT_ASSIGN;
+                        }
+                    } else if (next == '=') {
+                        p++;
+                        single = CToken.LE_OP;
+                    } else if (next == '%') {
+                        p++;
+                        single = CToken.LEFT_BRACE;
+                    } else if (next == ':') {
+                        p++;
+                        single = CToken.LEFT_SQBR;
+                    }
+                    break;
+                case '+':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.ADD_ASSIGN;
+                    } else if (next == '+') {
+                        p++;
+                        single = CToken.INC_OP;
+                    }
+                    break;
+                case '-':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.SUB_ASSIGN;
+                    } else if (next == '-') {
+                        p++;
+                        single = CToken.DEC_OP;
+                    } else if (next == '>') {
+                        p++;
+                        single = CToken.PTR_OP;
+                    }
+                    break;
+                case '%':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.MOD_ASSIGN;
+                    } else if (next == '>') {
+                        p++;
+                        single = CToken.RIGHT_BRACE;
+                    }
+                    break;
+                case '&':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.AND_ASSIGN;
+                    } else if (next == '&') {
+                        p++;
+                        single = CToken.AND_OP;
+                    }
+                    break;
+                case '|':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.OR_ASSIGN;
+                    } else if (next == '|') {
+                        p++;
+                        single = CToken.OR_OP;
+                    }
+                    break;
+                case '*':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.MUL_ASSIGN;
+                    }
+                    break;
+                case '^':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.XOR_ASSIGN;
+                    }
+                    break;
+                case '=':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.EQ_OP;
+                    }
+                    break;
+                case '!':
+                    if (next == '=') {
+                        p++;
+                        single = CToken.NE_OP;
+                    }
+                    break;
+                case ':':
+                    if (next == '>') {
+                        p++;
+                        single = CToken.RIGHT_SQBR;
+                    }
+                    break;
+                case '\r':
+                case '\u000B':
+                    throw new Error(NoMatch);
+                default:
+                    break;
+            }
+            token = single == null ? CToken.UNKNOWN.ordinal() : single.ordinal();
+        }
+
+        Token = token;
+        Start = start - Begin;
+        Length = p - start;
+        TokenLine = line;
+        TokenColumn = column;
+        if (multiline) {
+            Count(start, p);
+        } else {
+            Column = column + p - start;
+            Return = false;
+        }
+        Position = p;
+        return true;
+    }
+
+    /*
+     *  Moves the line and column past the given bytes, counting line breaks
+     *  the way JFlex does: a carriage return followed by a line feed is a
+     *  single break, and vertical tabs and form feeds are breaks too.
+     */
+    private void Count(int from, int to) {
+        ByteBuffer source = Source;
+        int line = Line;
+        boolean afterReturn = Return;
+        int lineStart = -1;
+        for (int i = from; i < to; i++) {
+            byte c = source.get(i);
+            if (c < '\n' || c > '\r') {
+                afterReturn = false;
+                continue;
+            }
+            if (c != '\n' || !afterReturn) {
+                line++;
+            }
+            afterReturn = c == '\r';
+            lineStart = i + 1;
+        }
+        Line = line;
+        Column = lineStart < 0 ? Column + to - from : to - lineStart;
+        Return = afterReturn;
+    }
+
+    // The characters that the "." of JFlex 1.5 does not match
+    private static boolean isLineBreak(byte c) {
+        return c == '\n' || c == '\r' || c == '\u000B' || c == '\f';
+    }
+
+    private int getKeyword(int start, int length) {
+        int[] bucket = Keywords[Source.get(start)];
+        if (bucket != null) {
+            for (int token : bucket) {
+                byte[] text = KeywordText[token];
+                if (text.length == length && isEqual(text, start)) {
+                    return token;
+                }
+            }
+        }
+        return CToken.IDENTIFIER.ordinal();
+    }
+
+    private boolean isEqual(byte[] text, int start) {
+        for (int i = 1; i < text.length; i++) {
+            if (Source.get(start + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean is(int p, int flag) {
+        if (p >= End) {
+            return false;
+        }
+        byte c = Source.get(p);
+        return c >= 0 && (Classes[c] & flag) != 0;
+    }
+
+    private int Skip(int p, int flag) {
+        while (is(p, flag)) {
+            p++;
+        }
+        return p;
+    }
+
+    /*
+     *  Numbers take the longest of the integer, hexadecimal and floating
+     *  point rules that match.
+     */
+    private int getNumberEnd(int start) {
+        int digits = Skip(start, Digit);
+        int end = Skip(digits, IntegerSuffix);
+
+        if (Source.get(start) == '0' && start + 1 < End && (Source.get(start + 1) | 0x20) == 'x' && is(start + 2, HexDigit)) {
+            end = Math.max(end, Skip(Skip(start + 2, HexDigit), IntegerSuffix));
+        }
+
+        int exponent = getExponentEnd(digits);
+        if (exponent > digits) {
+            end = Math.max(end, getFloatSuffixEnd(exponent));
+        }
+
+        if (digits < End && Source.get(digits) == '.') {
+            end = Math.max(end, getFractionEnd(digits + 1));
+        }
+        return end;
+    }
+
+    private int getFractionEnd(int p) {
+        return getFloatSuffixEnd(getExponentEnd(Skip(p, Digit)));
+    }
+
+    private int getExponentEnd(int p) {
+        if (p >= End || (Source.get(p) | 0x20) != 'e') {
+            return p;
+        }
+        int q = p + 1;
+        if (q < End && (Source.get(q) == '+' || Source.get(q) == '-')) {
+            q++;
+        }
+        return is(q, Digit) ? Skip(q, Digit) : p;
+    }
+
+    private int getFloatSuffixEnd(int p) {
+        return is(p, FloatSuffix) ? p + 1 : p;
+    }
+
+    /*
+     *  Returns the end of the comment starting with "/*" at the given
+     *  position, or 0 if the rules do not make it one.
+     */
+    private int getBlockCommentEnd(int start) {
+        ByteBuffer source = Source;
+        int end = End;
+        int p = start + 2;
+        if (p >= end) {
+            return 0;
+        }
+        if (source.get(p) == '*') {
+            while (p < end && source.get(p) == '*') {
+                p++;
+            }
+            return p < end && source.get(p) == '/' ? p + 1 : 0;
+        }
+        for (p++; p + 1 < end; p++) {
+            if (source.get(p) == '*' && source.get(p + 1) == '/') {
+                return p + 2;
+            }
+        }
+        return 0;
+    }
+
+    private int getLineCommentEnd(int start) {
+        ByteBuffer source = Source;
+        int end = End;
+        int p = start + 2;
+        while (p < end && source.get(p) != '\n' && source.get(p) != '\r') {
+            p++;
+        }
+        if (p == end) {
+            return 0;
+        }
+        if (source.get(p) == '\r' && p + 1 < end && source.get(p + 1) == '\n') {
+            return p + 2;
+        }
+        return p + 1;
+    }
+
+    /*
+     *  Returns the end of the string literal starting at the given quote, or
+     *  -1 if the document ends inside it.
+     */
+    private int getStringEnd(int start) {
+        ByteBuffer source = Source;
+        int end = End;
+        int p = start + 1;
+        while (p < end) {
+            byte c = source.get(p);
+            if (c == '"') {
+                return p + 1;
+            }
+            if (c == '\n' || c == '\r') {
+                throw new Error(NoMatch);
+            }
+            if (c == '\\' && p + 1 < end) {
+                byte escaped = source.get(p + 1);
+                if (escaped == 't' || escaped == 'n' || escaped == 'r' || escaped == '"') {
+                    p++;
+                }
+            }
+            p++;
+        }
+        return -1;
+    }
+
+    /*
+     *  Returns the end of the character constant starting at the given
+     *  quote, or 0 if there is none.
+     */
+    private int getCharacterEnd(int start) {
+        ByteBuffer source = Source;
+        int end = End;
+        int p = start + 1;
+        while (p < end) {
+            byte c = source.get(p);
+            if (c == '\'') {
+                return p > start + 1 ? p + 1 : 0;
+            }
+            if (c == '\\') {
+                if (p + 1 == end || isLineBreak(source.get(p + 1))) {
+                    return 0;
+                }
+                p++;
+            }
+            p++;
+        }
+        return 0;
+    }
+}
@@ -37,4 +37,24 @@ package edu.stanford.cs.m2.document.parse;
 
 public abstract class Parser {
     public abstract Symbol yylex() throws java.io.IOException;
+    
+    public abstract Token[] getTokens();
+    
+    public void Scan(TokenSink sink) throws java.io.IOException {
+        Scan(sink, TokenMask.Empty);
+    }
+    
+    /*
+     *  Reports every remaining token that is not in the mask to the sink.
+     *  Lexers that can do so without building a Symbol per token override
+     *  this.
+     */
+    public void Scan(TokenSink sink, TokenMask mask) throws java.io.IOException {
+        for (Symbol symbol = yylex(); symbol != null; symbol = yylex()) {
+            if (!mask.Contains(symbol.Token.ordinal())) {
+                sink.Add(symbol.Token.ordinal(), symbol.FilePosition.Line, symbol.FilePosition.Column,
+                        symbol.FilePosition.Character, symbol.Value.length());
+            }
+        }
+    }
 }
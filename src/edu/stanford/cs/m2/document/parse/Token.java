@@ -37,4 +37,6 @@ package edu.stanford.cs.m2.document.parse;
 
 public interface Token {
     public int toInt();
+    
+    public int ordinal();
 }
\ No newline at end of file
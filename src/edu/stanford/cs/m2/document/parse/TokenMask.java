@@ -0,0 +1,107 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.document.parse;
+
+/*
+ *  An immutable set of token ordinals, held in two longs so that testing a
+ *  token costs a shift and needs no lookup. It covers token enums of up to
+ *  Capacity values; CToken has 85.
+ */
+public class TokenMask {
+
+    public static final int Capacity = 128;
+    public static final TokenMask Empty = new TokenMask(0, 0);
+
+    // Ordinals 0 to 63, and 64 to 127
+    public final long Low;
+    public final long High;
+
+    public TokenMask(long low, long high) {
+        Low = low;
+        High = high;
+    }
+
+    /*
+     *  Parses a comma-separated list of token names of the vocabulary. An
+     *  empty list is the empty mask.
+     */
+    public static TokenMask Parse(String list, Token[] vocabulary) {
+        if (vocabulary.length > Capacity) {
+            throw new IllegalArgumentException("Too many tokens for a mask: " + vocabulary.length);
+        }
+        long low = 0;
+        long high = 0;
+        for (String name : list.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            int ordinal = find(name, vocabulary);
+            if (ordinal < 64) {
+                low |= 1L << ordinal;
+            } else {
+                high |= 1L << ordinal;
+            }
+        }
+        return new TokenMask(low, high);
+    }
+
+    private static int find(String name, Token[] vocabulary) {
+        for (Token token : vocabulary) {
+            if (token.toString().equals(name)) {
+                return token.ordinal();
+            }
+        }
+        throw new IllegalArgumentException("Unknown token: " + name);
+    }
+
+    public boolean Contains(int ordinal) {
+        return ((ordinal < 64 ? Low : High) >>> ordinal & 1) != 0;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof TokenMask)) {
+            return false;
+        }
+        TokenMask mask = (TokenMask) object;
+        return Low == mask.Low && High == mask.High;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (Low ^ (Low >>> 32) ^ High ^ (High >>> 32));
+    }
+}
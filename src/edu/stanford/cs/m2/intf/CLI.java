@@ -35,20 +35,48 @@
 package edu.stanford.cs.m2.intf;
 
 import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Ingestor;
+import edu.stanford.cs.m2.document.Pipeline;
+import edu.stanford.cs.m2.document.Processor;
+import edu.stanford.cs.m2.document.Snippet;
+import edu.stanford.cs.m2.document.StagedProcessor;
+import edu.stanford.cs.m2.document.filter.Filter;
 import edu.stanford.cs.m2.document.fingerprint.WinnowingFingerPrinter;
 import edu.stanford.cs.m2.document.hash.KGramRollingHasher;
 import edu.stanford.cs.m2.document.language.Language;
 import edu.stanford.cs.m2.document.language.Support;
 import edu.stanford.cs.m2.document.language.exception.UnknownLanguageException;
 import edu.stanford.cs.m2.match.Aggregator;
+import edu.stanford.cs.m2.match.Baseline;
+import edu.stanford.cs.m2.match.DiagonalAggregator;
+import edu.stanford.cs.m2.match.FrequencyCap;
+import edu.stanford.cs.m2.match.GraceMatcher;
+import edu.stanford.cs.m2.match.HashJoin;
+import edu.stanford.cs.m2.match.IncrementalMatcher;
 import edu.stanford.cs.m2.match.Match;
-import edu.stanford.cs.m2.match.Matcher;
+import edu.stanford.cs.m2.match.MatchSpill;
+import edu.stanford.cs.m2.match.MinHashMatcher;
 import edu.stanford.cs.m2.match.NPartiteMatcher;
+import edu.stanford.cs.m2.match.PairScorer;
+import edu.stanford.cs.m2.match.ParallelNPartiteMatcher;
+import edu.stanford.cs.m2.match.ScoredPair;
+import edu.stanford.cs.m2.match.ScoringMatcher;
+import edu.stanford.cs.m2.match.Similarity;
+import edu.stanford.cs.m2.match.SimilarityJoinMatcher;
+import edu.stanford.cs.m2.match.index.IndexWriter;
+import edu.stanford.cs.m2.match.index.MappedIndex;
 import edu.stanford.cs.m2.util.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.cli.CommandLine;
@@ -62,6 +90,9 @@ import org.apache.commons.cli.ParseException;
 
 public class CLI {
 
+    private static final int K = 10;
+    private static final int Window = 3;
+
     CommandLine Command;
     Options Options;
 
@@ -72,58 +103,412 @@ public class CLI {
         return this;
     }
 
-    public void Execute() throws IOException {
+    public void Execute() throws IOException, ParseException {
         Language language = Language.valueOf(Command.getOptionValue("l"));
         String[] files1 = Command.getOptionValues("f1");
         String[] files2 = Command.getOptionValues("f2");
         
+        int threads = getThreads();
+        
+        Filter filter;
+        Ingestor ingestor;
+        try {
+            filter = getFilter(language);
+            ingestor = new Ingestor(language, Charset.forName("US-ASCII"), getProcessor(filter), threads);
+        } catch (UnknownLanguageException ex) {
+            Logger.getLogger(CLI.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        
+        Baseline baseline = null;
+        if (Command.hasOption("b")) {
+            baseline = new Baseline(ingestor.Ingest(Command.getOptionValues("b")));
+        }
+        
+        List<MappedIndex> archives = new ArrayList<>();
+        if (Command.hasOption("x")) {
+            for (String path : Command.getOptionValues("x")) {
+                MappedIndex archive = new MappedIndex(path);
+                Check(archive, language, filter);
+                archives.add(archive);
+            }
+        }
+        
+        if (Command.hasOption("hash-join")) {
+            if (files2 == null) {
+                throw new ParseException("--hash-join needs both -f1 and -f2");
+            }
+            Reject("hash-join", "max-frequency", "save", "threshold", "top", "pairs", "join", "bands", "memory");
+            HashJoin(ingestor, baseline, files1, files2, archives);
+            return;
+        }
+        
+        if (Command.hasOption("update")) {
+            if (files2 != null) {
+                throw new ParseException("--update takes a single group of files");
+            }
+            Reject("update", "hash-join", "max-frequency", "save", "threshold", "top", "pairs", "join", "bands", "memory");
+            Update(ingestor, baseline, language, filter, files1, archives);
+            return;
+        }
+        
+        CheckMatcher();
+        
         List<List<Document>> groups = new LinkedList<>();
-
-        List<Document> documents = new LinkedList<>();
-
-        for (String file : files1) {
-            try {
-                Document document = new Document(file, File.Read(file, Charset.forName("US-ASCII")), language);
-                documents.add(document);
-                document.Parse(Support.getParser(language, document));
-                document.Filter(Support.getFilter(language));
-                document.Hash(new KGramRollingHasher(10));
-                document.FingerPrint(new WinnowingFingerPrinter(3));
-            } catch (UnknownLanguageException ex) {
-                Logger.getLogger(CLI.class.getName()).log(Level.SEVERE, null, ex);
+        groups.add(ingestor.Ingest(files1));
+        if (files2 != null) {
+            groups.add(ingestor.Ingest(files2));
+        }
+        
+        if (baseline != null) {
+            long excluded = 0;
+            for (List<Document> group : groups) {
+                excluded += baseline.Exclude(group);
             }
+            Logger.getLogger(CLI.class.getName()).log(Level.INFO, "Excluded {0} baseline fingerprints", excluded);
         }
-        groups.add(documents);
-
-        documents = new LinkedList<>();
-
-        for (String file : files2) {
-            try {
-                Document document = new Document(file, File.Read(file, Charset.forName("US-ASCII")), language);
-                documents.add(document);
-                document.Parse(Support.getParser(language, document));
-                document.Filter(Support.getFilter(language));
-                document.Hash(new KGramRollingHasher(10));
-                document.FingerPrint(new WinnowingFingerPrinter(3));
-            } catch (UnknownLanguageException ex) {
-                Logger.getLogger(CLI.class.getName()).log(Level.SEVERE, null, ex);
+        
+        if (Command.hasOption("save")) {
+            List<Document> documents = new ArrayList<>();
+            for (List<Document> group : groups) {
+                documents.addAll(group);
+            }
+            IndexWriter.Write(documents, Window, filter.getMask(), Command.getOptionValue("save"));
+        }
+        
+        NPartiteMatcher matcher = getMatcher(groups, archives, threads);
+        
+        if (Command.hasOption("c")) {
+            matcher.Cap = FrequencyCap.Parse(Command.getOptionValue("c"));
+        }
+        
+        // Rank the document pairs without matching their snippets
+        if (Command.hasOption("pairs")) {
+            for (ScoredPair pair : ((PairScorer) matcher).Score()) {
+                System.out.println(String.format("%.4f\t%d\t%s\t%s", pair.Score, pair.Shared, pair.Document1.Name, pair.Document2.Name));
             }
+            return;
         }
-        groups.add(documents);
         
-        Matcher matcher = new NPartiteMatcher(groups);
+        // Sort the matches on disk and aggregate one document pair at a time
+        if (Command.hasOption("memory")) {
+            Aggregator aggregator = getAggregator();
+            try (MatchSpill spill = MatchSpill.Spill(matcher, getTempDirectory());
+                    MatchSpill sorted = spill.Sort(getMemoryBudget());
+                    MatchSpill.Reader reader = sorted.Read()) {
+                LogCap(matcher);
+                for (List<Match> pair = reader.NextPair(); pair != null; pair = reader.NextPair()) {
+                    Print(aggregator.AggregatePair(pair));
+                }
+            }
+            return;
+        }
         
         List<Match> matches = matcher.Match();
         
-        new Aggregator().Aggregate(matches);
+        LogCap(matcher);
         
+        Print(getAggregator(), matches);
+    }
+
+    private static void Check(MappedIndex index, Language language, Filter filter) throws IOException {
+        if (index.Language != language || index.K != K || index.Window != Window
+                || !index.Mask.equals(filter.getMask())) {
+            throw new IOException("Index " + index.Path + " was built with different settings");
+        }
+    }
+
+    /*
+     *  Fails if any of the options is given along with a mode that does not
+     *  support it, rather than silently ignoring it.
+     */
+    private void Reject(String mode, String... options) throws ParseException {
+        for (String option : options) {
+            if (Command.hasOption(option)) {
+                throw new ParseException("--" + mode + " cannot be combined with --" + option);
+            }
+        }
+    }
+
+    private static void LogCap(NPartiteMatcher matcher) {
+        if (matcher.Cap != null) {
+            Logger.getLogger(CLI.class.getName()).log(Level.INFO, "Suppressed {0} common fingerprints ({1} postings)",
+                    new Object[] { matcher.Cap.getSuppressedHashes(), matcher.Cap.getSuppressedPostings() });
+        }
+    }
+
+    /*
+     *  Indexes the group with fewer bytes and streams the files of the other
+     *  one through the pipeline, printing the matches of each file as soon as
+     *  it is processed.
+     */
+    private void HashJoin(Ingestor ingestor, Baseline baseline, String[] files1, String[] files2,
+            List<MappedIndex> archives) throws IOException {
+        String[] build = files1;
+        String[] probe = files2;
+        if (getSize(files1) > getSize(files2)) {
+            build = files2;
+            probe = files1;
+        }
+
+        List<Document> documents = ingestor.Ingest(build);
+        if (baseline != null) {
+            baseline.Exclude(documents);
+        }
+
+        HashJoin join = new HashJoin(documents, archives);
+        Aggregator aggregator = getAggregator();
+
+        Print(aggregator, join.MatchArchives());
+
+        for (String file : probe) {
+            Document document = ingestor.Load(file);
+            if (document == null) {
+                continue;
+            }
+            if (baseline != null) {
+                baseline.Exclude(document);
+            }
+            Print(aggregator, join.Probe(document));
+        }
+    }
+
+    /*
+     *  Reports only the matches of the files that are new or changed since the
+     *  update index was last written, then writes it back with the current
+     *  files. The fingerprints of unchanged files are read back from the index
+     *  rather than processed again, and their matches with each other, which
+     *  the earlier run reported, are not looked up. Indexed files that are no
+     *  longer given are dropped.
+     */
+    private void Update(Ingestor ingestor, Baseline baseline, Language language, Filter filter, String[] files,
+            List<MappedIndex> archives) throws IOException {
+        Path path = Paths.get(Command.getOptionValue("update"));
+
+        Map<String, Document> current = new HashMap<>();
+        if (Files.exists(path)) {
+            MappedIndex index = new MappedIndex(path.toString());
+            Check(index, language, filter);
+            List<Document> indexed = index.LoadDocuments();
+            for (int id = 0; id < indexed.size(); id++) {
+                Path file = Paths.get(indexed.get(id).Name);
+                if (Files.isRegularFile(file) && Files.size(file) == index.getFileSize(id)
+                        && Files.getLastModifiedTime(file).toMillis() == index.getFileModified(id)) {
+                    current.put(indexed.get(id).Name, indexed.get(id));
+                }
+            }
+        }
+
+        List<Document> unchanged = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        for (String file : files) {
+            if (current.containsKey(file)) {
+                unchanged.add(current.get(file));
+            } else {
+                changed.add(file);
+            }
+        }
+
+        List<Document> added = ingestor.Ingest(changed.toArray(new String[changed.size()]));
+        if (baseline != null) {
+            baseline.Exclude(added);
+        }
+        Logger.getLogger(CLI.class.getName()).log(Level.INFO, "Reused {0} unchanged files and processed {1}",
+                new Object[] { unchanged.size(), added.size() });
+
+        IncrementalMatcher matcher = new IncrementalMatcher(1, archives);
+        for (Document document : unchanged) {
+            matcher.Restore(0, document);
+        }
+        for (Document document : added) {
+            matcher.Add(0, document);
+        }
+
+        Print(getAggregator(), matcher.Match());
+
+        // Replace the index in one step, since the old one may still be mapped
+        List<Document> documents = new ArrayList<>(unchanged);
+        documents.addAll(added);
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), null);
+        try {
+            IndexWriter.Write(documents, Window, filter.getMask(), temp.toString());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static long getSize(String[] files) throws IOException {
+        long size = 0;
+        for (String file : files) {
+            size += Files.size(Paths.get(file));
+        }
+        return size;
+    }
+
+    private void Print(Aggregator aggregator, List<Match> matches) throws IOException {
+        aggregator.Aggregate(matches);
+        Print(matches);
+    }
+
+    private void Print(List<Match> matches) throws IOException {
         for (Match match: matches) {
-            System.out.println(match.Snippet1.Document.Name + ": " + match.Snippet1.Document.Content.substring(match.Snippet1.Begin.FilePosition.Character, match.Snippet1.End.FilePosition.Character + match.Snippet1.End.Value.length()));
-            System.out.println(match.Snippet2.Document.Name + ": " + match.Snippet2.Document.Content.substring(match.Snippet2.Begin.FilePosition.Character, match.Snippet2.End.FilePosition.Character + match.Snippet2.End.Value.length()));
+            System.out.println(Render(match.Snippet1));
+            System.out.println(Render(match.Snippet2));
             System.out.println("------------------------------------");
         }
     }
 
+    /*
+     *  Fails on the options that the matcher chosen by getMatcher would
+     *  ignore. The matching modes do not combine, and only the default
+     *  matchers use more than one thread.
+     */
+    private void CheckMatcher() throws ParseException {
+        boolean scoring = isScoring();
+        if (Command.hasOption("rows") && !Command.hasOption("bands")) {
+            throw new ParseException("--rows needs --bands");
+        }
+        if (Command.hasOption("similarity") && !scoring) {
+            throw new ParseException("--similarity needs --threshold, --top or --pairs");
+        }
+
+        if (Command.hasOption("join")) {
+            Reject("join", "bands", "threshold", "top", "similarity", "memory", "threads");
+        } else if (Command.hasOption("bands")) {
+            Reject("bands", "threshold", "top", "similarity", "memory", "threads");
+        } else if (scoring) {
+            Reject(Command.hasOption("threshold") ? "threshold" : Command.hasOption("top") ? "top" : "pairs",
+                    "memory", "threads");
+        } else if (Command.hasOption("memory")) {
+            Reject("memory", "threads");
+        }
+    }
+
+    private boolean isScoring() {
+        return Command.hasOption("threshold") || Command.hasOption("top") || Command.hasOption("pairs");
+    }
+
+    private NPartiteMatcher getMatcher(List<List<Document>> groups, List<MappedIndex> archives, int threads) {
+        if (Command.hasOption("join")) {
+            return new SimilarityJoinMatcher(groups, archives, Double.parseDouble(Command.getOptionValue("join")));
+        }
+        if (Command.hasOption("bands")) {
+            return new MinHashMatcher(groups, archives,
+                    Integer.parseInt(Command.getOptionValue("bands")),
+                    Integer.parseInt(Command.getOptionValue("rows", "4")));
+        }
+        if (isScoring()) {
+            return new ScoringMatcher(groups, archives,
+                    Similarity.valueOf(Command.getOptionValue("similarity", "Jaccard")),
+                    Double.parseDouble(Command.getOptionValue("threshold", "0")),
+                    Integer.parseInt(Command.getOptionValue("top", "0")));
+        }
+        if (Command.hasOption("memory")) {
+            return new GraceMatcher(groups, archives, getMemoryBudget(), getTempDirectory());
+        }
+        return threads > 1 ? new ParallelNPartiteMatcher(groups, archives, threads) : new NPartiteMatcher(groups, archives);
+    }
+
+    /*
+     *  The thread count of the t option, or one thread per processor.
+     */
+    private int getThreads() throws ParseException {
+        String value = Command.getOptionValue("t");
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+        throw new ParseException("Invalid -t: " + value + " is not a positive number of threads");
+    }
+
+    private long getMemoryBudget() {
+        return Long.parseLong(Command.getOptionValue("memory")) << 20;
+    }
+
+    private Path getTempDirectory() {
+        return Paths.get(Command.getOptionValue("temp", System.getProperty("java.io.tmpdir")));
+    }
+
+    private Aggregator getAggregator() {
+        String aggregator = Command.getOptionValue("a", "overlap");
+        switch (aggregator) {
+            case "overlap":
+                return new Aggregator();
+            case "diagonal":
+                return new DiagonalAggregator(
+                        Integer.parseInt(Command.getOptionValue("gap", String.valueOf(K))),
+                        Integer.parseInt(Command.getOptionValue("drift", "2")));
+            default:
+                throw new IllegalArgumentException(aggregator);
+        }
+    }
+
+    /*
+     *  The filter named by the filter option, or the language's default filter.
+     */
+    private Filter getFilter(Language language) throws UnknownLanguageException, ParseException {
+        try {
+            return Support.getFilter(language, Command.getOptionValue("filter"));
+        } catch (IllegalArgumentException ex) {
+            throw new ParseException("Invalid --filter: " + ex.getMessage());
+        }
+    }
+
+    private Processor getProcessor(Filter filter) {
+        if (Command.hasOption("s")) {
+            return new Pipeline(filter, K, Window);
+        }
+        return new StagedProcessor(filter, new KGramRollingHasher(K), new WinnowingFingerPrinter(Window));
+    }
+
+    private String Render(Snippet snippet) throws IOException {
+        Document document = snippet.Document;
+
+        // Archived documents only keep their names
+        if (document.Content == null && document.Source == null) {
+            try {
+                document.Content = File.Read(document.Name, Charset.forName("US-ASCII"));
+            } catch (IOException ex) {
+                return document.Name + ": tokens " + snippet.Begin + " to " + snippet.End;
+            }
+        }
+
+        // Streamed documents only keep their fingerprints
+        if (document.Tokens == null) {
+            try {
+                new Pipeline(getFilter(document.Language), K, Window).Tokenize(document);
+            } catch (UnknownLanguageException | ParseException ex) {
+                Logger.getLogger(CLI.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        return document.Name + ": " + snippet.getText();
+    }
+
+    /*
+     *  The default filters of the supported languages, for the help text.
+     */
+    private static String getDefaultFilterLists() {
+        StringBuilder defaults = new StringBuilder();
+        for (Language language : Language.values()) {
+            try {
+                String list = Support.getDefaultFilterList(language);
+                defaults.append(defaults.length() == 0 ? "default for " : "; for ").append(language).append(": ").append(list);
+            } catch (UnknownLanguageException ex) {
+                // The language has no lexer yet
+            }
+        }
+        return defaults.toString();
+    }
+
     public Options BuildOptions() {
         Options options = new Options();
 
@@ -149,11 +534,172 @@ public class CLI {
                 .withArgName("files2")
                 .hasArgs()
                 .withDescription("Path to source files")
-                .isRequired()
                 .withLongOpt("files2")
                 .create("f2");
         options.addOption(files2);
 
+        Option baseline = OptionBuilder
+                .withArgName("files")
+                .hasArgs()
+                .withDescription("Starter code whose fingerprints are ignored")
+                .withLongOpt("baseline")
+                .create("b");
+        options.addOption(baseline);
+
+        Option archive = OptionBuilder
+                .withArgName("indexes")
+                .hasArgs()
+                .withDescription("Fingerprint index files to match against")
+                .withLongOpt("archive")
+                .create("x");
+        options.addOption(archive);
+
+        Option cap = OptionBuilder
+                .withArgName("n|x%")
+                .hasArg()
+                .withDescription("Ignore fingerprints found in more than n documents, or x% of them")
+                .withLongOpt("max-frequency")
+                .create("c");
+        options.addOption(cap);
+
+        Option filter = OptionBuilder
+                .withArgName("tokens")
+                .hasArg()
+                .withDescription("Comma-separated token names to leave out (" + getDefaultFilterLists() + "); empty to keep every token")
+                .withLongOpt("filter")
+                .create();
+        options.addOption(filter);
+
+        Option similarity = OptionBuilder
+                .withArgName("Jaccard|Containment")
+                .hasArg()
+                .withDescription("Similarity used to score document pairs (default Jaccard)")
+                .withLongOpt("similarity")
+                .create();
+        options.addOption(similarity);
+
+        Option threshold = OptionBuilder
+                .withArgName("score")
+                .hasArg()
+                .withDescription("Only match document pairs with at least this similarity")
+                .withLongOpt("threshold")
+                .create();
+        options.addOption(threshold);
+
+        Option top = OptionBuilder
+                .withArgName("n")
+                .hasArg()
+                .withDescription("Only match the n most similar document pairs")
+                .withLongOpt("top")
+                .create();
+        options.addOption(top);
+
+        Option pairs = OptionBuilder
+                .withDescription("Print the scores of the document pairs instead of their matches")
+                .withLongOpt("pairs")
+                .create();
+        options.addOption(pairs);
+
+        Option join = OptionBuilder
+                .withArgName("jaccard")
+                .hasArg()
+                .withDescription("Only match the document pairs with at least this Jaccard similarity, found by a prefix-filtered join (not with --bands, --threshold, --top, --similarity, --memory or -t)")
+                .withLongOpt("join")
+                .create();
+        options.addOption(join);
+
+        Option bands = OptionBuilder
+                .withArgName("n")
+                .hasArg()
+                .withDescription("Only match the document pairs found by MinHash LSH with n bands (not with --threshold, --top, --similarity, --memory or -t)")
+                .withLongOpt("bands")
+                .create();
+        options.addOption(bands);
+
+        Option rows = OptionBuilder
+                .withArgName("n")
+                .hasArg()
+                .withDescription("Rows per LSH band (default 4)")
+                .withLongOpt("rows")
+                .create();
+        options.addOption(rows);
+
+        Option hashJoin = OptionBuilder
+                .withDescription("Index only the smaller of files1 and files2 and stream the other one (not with -c, --save, --threshold, --top, --pairs, --join, --bands or --memory)")
+                .withLongOpt("hash-join")
+                .create();
+        options.addOption(hashJoin);
+
+        Option memory = OptionBuilder
+                .withArgName("megabytes")
+                .hasArg()
+                .withDescription("Join, sort and aggregate the matches through files on disk, using at most this much memory per partition or run (not with --threshold, --top, --pairs or -t)")
+                .withLongOpt("memory")
+                .create();
+        options.addOption(memory);
+
+        Option temp = OptionBuilder
+                .withArgName("directory")
+                .hasArg()
+                .withDescription("Directory for temporary files (default java.io.tmpdir)")
+                .withLongOpt("temp")
+                .create();
+        options.addOption(temp);
+
+        Option save = OptionBuilder
+                .withArgName("index")
+                .hasArg()
+                .withDescription("Write the fingerprints of all files to an index file")
+                .withLongOpt("save")
+                .create();
+        options.addOption(save);
+
+        Option update = OptionBuilder
+                .withArgName("index")
+                .hasArg()
+                .withDescription("Report only the matches of files that are new or changed since this index was last written, and write it back")
+                .withLongOpt("update")
+                .create();
+        options.addOption(update);
+
+        Option stream = OptionBuilder
+                .withDescription("Fingerprint each file in a single streaming pass")
+                .withLongOpt("stream")
+                .create("s");
+        options.addOption(stream);
+
+        Option threads = OptionBuilder
+                .withArgName("threads")
+                .hasArg()
+                .withDescription("Number of threads used to process files and generate matches (only with the default matcher)")
+                .withLongOpt("threads")
+                .create("t");
+        options.addOption(threads);
+
+        Option aggregator = OptionBuilder
+                .withArgName("aggregator")
+                .hasArg()
+                .withDescription("Match aggregation: overlap (default) or diagonal")
+                .withLongOpt("aggregator")
+                .create("a");
+        options.addOption(aggregator);
+
+        Option gap = OptionBuilder
+                .withArgName("tokens")
+                .hasArg()
+                .withDescription("Largest gap bridged by diagonal aggregation")
+                .withLongOpt("gap")
+                .create();
+        options.addOption(gap);
+
+        Option drift = OptionBuilder
+                .withArgName("tokens")
+                .hasArg()
+                .withDescription("Largest diagonal drift tolerated by diagonal aggregation")
+                .withLongOpt("drift")
+                .create();
+        options.addOption(drift);
+
         return options;
     }
 
@@ -162,7 +708,8 @@ public class CLI {
         try {
             cli.Build(args).Execute();
         } catch (ParseException e) {
-            new HelpFormatter().printHelp("m2 -l <language> -f1 <files> -f2 <files>", cli.Options);
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("m2 -l <language> -f1 <files> [-f2 <files>] [-b <files>] [-x <indexes>]", cli.Options);
         }
     }
 }
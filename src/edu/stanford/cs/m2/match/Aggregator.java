@@ -36,107 +36,125 @@ package edu.stanford.cs.m2.match;
 
 import edu.stanford.cs.m2.document.Document;
 import edu.stanford.cs.m2.document.Snippet;
-import edu.stanford.cs.m2.document.parse.Symbol;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class Aggregator {
 
     public void Aggregate(List<Match> matches) {
-        Map<Document, Map<Document, List<Match>>> pairTable = new HashMap<>();
+        Map<Document, Map<Document, List<Match>>> pairTable = new LinkedHashMap<>();
 
         for (Match match : matches) {
             if (!pairTable.containsKey(match.Snippet1.Document)) {
-                pairTable.put(match.Snippet1.Document, new HashMap<>());
+                pairTable.put(match.Snippet1.Document, new LinkedHashMap<Document, List<Match>>());
             }
 
             if (!pairTable.get(match.Snippet1.Document).containsKey(match.Snippet2.Document)) {
-                pairTable.get(match.Snippet1.Document).put(match.Snippet2.Document, new LinkedList<>());
+                pairTable.get(match.Snippet1.Document).put(match.Snippet2.Document, new ArrayList<Match>());
             }
 
             pairTable.get(match.Snippet1.Document).get(match.Snippet2.Document).add(match);
         }
 
+        matches.clear();
+
+        for (Map<Document, List<Match>> row : pairTable.values()) {
+            for (List<Match> pairMatches : row.values()) {
+                matches.addAll(AggregatePair(pairMatches));
+            }
+        }
+    }
+
+    /*
+     *  Merges the matches of a single document pair until no two of them can
+     *  be combined. Each pass sorts the matches by their beginning in the
+     *  first document and sweeps over them, keeping the merged matches that
+     *  still reach the sweep position in the first document. A match can only
+     *  be combined with one of those, so a pass costs O(m log m). A pass
+     *  that combines nothing proves that no combinable pair is left; merges
+     *  that grow a match in the second document may occasionally require a
+     *  second pass.
+     */
+    public List<Match> AggregatePair(List<Match> matches) {
         boolean change = true;
         while (change) {
             change = false;
-            Set<Match> deleteSet = new HashSet<>();
-            Set<Match> addSet = new HashSet<>();
 
-            for (Document document1 : pairTable.keySet()) {
-                if (change) {
-                    break;
-                }
+            Collections.sort(matches, ByFirstBegin);
 
-                for (Document document2 : pairTable.get(document1).keySet()) {
-                    if (change) {
-                        break;
-                    }
+            List<Match> result = new ArrayList<>();
+            List<Match> active = new ArrayList<>();
 
-                    List<Match> m = pairTable.get(document1).get(document2);
+            for (Match match : matches) {
 
-                    for (Match m1 : m) {
-                        if (change) {
-                            break;
-                        }
+                // Retire the matches that end before this one begins
+                Iterator<Match> it = active.iterator();
+                while (it.hasNext()) {
+                    Match candidate = it.next();
+                    if (candidate.Snippet1.End + 1 < match.Snippet1.Begin) {
+                        result.add(candidate);
+                        it.remove();
+                    }
+                }
 
-                        for (Match m2 : m) {
-                            if (change) {
-                                break;
-                            }
-
-                            if (!m1.equals(m2)) {
-
-                                // Combine if the sum of the length of the two snippets
-                                // is at least as big as the length from the beginning
-                                // of the earlier snippet to the end of the latest
-                                // snippet for both documents
-                                int m1snippet1Length = m1.Snippet1.End.FilePosition.Character + m1.Snippet1.End.Value.length() - m1.Snippet1.Begin.FilePosition.Character;
-                                int m1snippet2Length = m1.Snippet2.End.FilePosition.Character + m1.Snippet2.End.Value.length() - m1.Snippet2.Begin.FilePosition.Character;
-                                int m2snippet1Length = m2.Snippet1.End.FilePosition.Character + m2.Snippet1.End.Value.length() - m2.Snippet1.Begin.FilePosition.Character;
-                                int m2snippet2Length = m2.Snippet2.End.FilePosition.Character + m2.Snippet2.End.Value.length() - m2.Snippet2.Begin.FilePosition.Character;
-
-                                Symbol d1MinBegin = (m1.Snippet1.Begin.FilePosition.Character <= m2.Snippet1.Begin.FilePosition.Character) ? m1.Snippet1.Begin : m2.Snippet1.Begin;
-                                Symbol d1MaxEnd = (m1.Snippet1.End.FilePosition.Character + m1.Snippet1.End.Value.length() >= m2.Snippet1.End.FilePosition.Character + m2.Snippet1.End.Value.length()) ? m1.Snippet1.End : m2.Snippet1.End;
-                                Symbol d2MinBegin = (m1.Snippet2.Begin.FilePosition.Character <= m2.Snippet2.Begin.FilePosition.Character) ? m1.Snippet2.Begin : m2.Snippet2.Begin;
-                                Symbol d2MaxEnd = (m1.Snippet2.End.FilePosition.Character + m1.Snippet2.End.Value.length() >= m2.Snippet2.End.FilePosition.Character + m2.Snippet2.End.Value.length()) ? m1.Snippet2.End : m2.Snippet2.End;
-
-                                if (m1snippet1Length + m2snippet1Length >= (d1MaxEnd.FilePosition.Character - d1MaxEnd.Value.length()) - d1MinBegin.FilePosition.Character
-                                        && m1snippet2Length + m2snippet2Length >= (d2MaxEnd.FilePosition.Character - d2MaxEnd.Value.length()) - d2MinBegin.FilePosition.Character) {
-                                    // Combine the matches
-
-                                    Match newMatch = new Match(new Snippet(m1.Snippet1.Document, d1MinBegin, d1MaxEnd), new Snippet(m1.Snippet2.Document, d2MinBegin, d2MaxEnd));
-
-                                    if (!newMatch.equals(m1) && !newMatch.equals(m2)) {
-                                        addSet.add(newMatch);
-                                        deleteSet.add(m1);
-                                        deleteSet.add(m2);
-
-                                        change = true;
-                                    }
-                                }
-                            }
+                // Absorb every active match this one can be combined with;
+                // the merged match may reach further, so rescan until stable
+                boolean merged = true;
+                while (merged) {
+                    merged = false;
+                    it = active.iterator();
+                    while (it.hasNext()) {
+                        Match candidate = it.next();
+                        if (isCombinable(candidate, match)) {
+                            match = Combine(candidate, match);
+                            it.remove();
+                            merged = true;
+                            change = true;
                         }
                     }
                 }
-            }
 
-            for (Match match : deleteSet) {
-                matches.remove(match);
-                pairTable.get(match.Snippet1.Document).get(match.Snippet2.Document).remove(match);
+                active.add(match);
             }
 
-            for (Match match : addSet) {
-                if (!matches.contains(match)) {
-                    matches.add(match);
-                    pairTable.get(match.Snippet1.Document).get(match.Snippet2.Document).add(match);
-                }
-            }
+            result.addAll(active);
+            matches = result;
         }
+
+        return matches;
     }
+
+    /*
+     *  Two matches are combined if the sum of the length of the two snippets
+     *  is at least as big as the length from the beginning of the earlier
+     *  snippet to the end of the latest snippet for both documents (lengths in
+     *  tokens), i.e. they overlap or touch in both documents.
+     */
+    protected static boolean isCombinable(Match m1, Match m2) {
+        return isCombinable(m1.Snippet1, m2.Snippet1) && isCombinable(m1.Snippet2, m2.Snippet2);
+    }
+
+    private static boolean isCombinable(Snippet s1, Snippet s2) {
+        int minBegin = Math.min(s1.Begin, s2.Begin);
+        int maxEnd = Math.max(s1.End, s2.End);
+        return s1.getLength() + s2.getLength() >= maxEnd - minBegin + 1;
+    }
+
+    protected static Match Combine(Match m1, Match m2) {
+        return new Match(
+                new Snippet(m1.Snippet1.Document, Math.min(m1.Snippet1.Begin, m2.Snippet1.Begin), Math.max(m1.Snippet1.End, m2.Snippet1.End)),
+                new Snippet(m1.Snippet2.Document, Math.min(m1.Snippet2.Begin, m2.Snippet2.Begin), Math.max(m1.Snippet2.End, m2.Snippet2.End)));
+    }
+
+    protected static final Comparator<Match> ByFirstBegin = new Comparator<Match>() {
+        @Override
+        public int compare(Match m1, Match m2) {
+            return Integer.compare(m1.Snippet1.Begin, m2.Snippet1.Begin);
+        }
+    };
 }
@@ -0,0 +1,86 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.match.index.FingerPrintIndex;
+import java.util.List;
+
+/*
+ *  Fingerprints of the code handed out with an assignment. Every student's
+ *  copy of the starter code would otherwise match every other copy, so these
+ *  fingerprints are stripped from the submissions before they are indexed.
+ *
+ *  The baseline documents must go through the same processor as the
+ *  submissions, or their hashes will not line up.
+ */
+public class Baseline {
+
+    private final FingerPrintIndex Index;
+
+    public Baseline(List<Document> documents) {
+        Index = new FingerPrintIndex(documents);
+    }
+
+    public boolean Contains(long hash) {
+        return Index.find(hash) != -1;
+    }
+
+    /*
+     *  Removes the baseline fingerprints of a document in place and returns
+     *  how many were removed.
+     */
+    public int Exclude(Document document) {
+        FingerPrints fingerPrints = document.FingerPrints;
+        int size = 0;
+        for (int i = 0; i < fingerPrints.Size; i++) {
+            if (!Contains(fingerPrints.getHash(i))) {
+                fingerPrints.Copy(i, size++);
+            }
+        }
+        int excluded = fingerPrints.Size - size;
+        fingerPrints.Size = size;
+        return excluded;
+    }
+
+    public long Exclude(List<Document> documents) {
+        long excluded = 0;
+        for (Document document : documents) {
+            excluded += Exclude(document);
+        }
+        return excluded;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Snippet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/*
+ *  Aggregates matches by chaining them along diagonals, in the manner of
+ *  seed-and-extend sequence alignment. Matches coming from the same copied
+ *  region have a nearly constant diagonal, the position in the second
+ *  document minus the position in the first.
+ *
+ *  Matches are visited in token order of the first document. A match extends
+ *  an open chain if its diagonal is within Drift tokens of the chain's latest
+ *  diagonal and it starts at most Gap tokens after the chain ends in both
+ *  documents; otherwise it starts a new chain. Open chains are bucketed by
+ *  diagonal band of width Drift + 1, so only three buckets are probed per
+ *  match, and queued by their end in the first document, so closing the
+ *  chains a match has moved past costs O(log m) per chain. The resulting chains are finally merged with the overlap rule of
+ *  Aggregator.
+ */
+public class DiagonalAggregator extends Aggregator {
+
+    public int Gap;
+    public int Drift;
+
+    public DiagonalAggregator(int gap, int drift) {
+        if (gap < 0 || drift < 0) {
+            throw new IllegalArgumentException(gap + ", " + drift);
+        }
+        Gap = gap;
+        Drift = drift;
+    }
+
+    @Override
+    public List<Match> AggregatePair(List<Match> matches) {
+        Collections.sort(matches, ByFirstBegin);
+
+        List<Match> result = new ArrayList<>();
+        Map<Integer, Set<Chain>> bands = new HashMap<>();
+
+        // Open chains by their end in the first document. A chain is queued
+        // again whenever it grows, so an entry is stale if the chain has
+        // grown or been closed since.
+        PriorityQueue<Ending> endings = new PriorityQueue<>();
+
+        for (Match match : matches) {
+
+            // Close the chains that can no longer be extended
+            while (!endings.isEmpty() && endings.peek().End1 + Gap + 1 < match.Snippet1.Begin) {
+                Ending ending = endings.poll();
+                Chain chain = ending.Chain;
+                if (chain.End1 == ending.End1 && bands.get(chain.Band).remove(chain)) {
+                    result.add(chain.toMatch());
+                }
+            }
+
+            int diagonal = getDiagonal(match);
+            int band = getBand(diagonal);
+
+            Chain extended = null;
+            for (int b = band - 1; b <= band + 1 && extended == null; b++) {
+                Set<Chain> chains = bands.get(b);
+                if (chains == null) {
+                    continue;
+                }
+                for (Chain chain : chains) {
+                    if (chain.isExtendedBy(match, diagonal)) {
+                        extended = chain;
+                        break;
+                    }
+                }
+            }
+
+            if (extended == null) {
+                extended = new Chain(match);
+                endings.add(new Ending(extended));
+            } else {
+                bands.get(extended.Band).remove(extended);
+                int end1 = extended.End1;
+                extended.Extend(match);
+                if (extended.End1 != end1) {
+                    endings.add(new Ending(extended));
+                }
+            }
+
+            extended.Diagonal = diagonal;
+            extended.Band = band;
+            if (!bands.containsKey(band)) {
+                bands.put(band, new LinkedHashSet<Chain>());
+            }
+            bands.get(band).add(extended);
+        }
+
+        // Close the remaining chains in the order they were opened
+        List<Chain> open = new ArrayList<>();
+        for (Set<Chain> chains : bands.values()) {
+            open.addAll(chains);
+        }
+        Collections.sort(open, ByBegin);
+        for (Chain chain : open) {
+            result.add(chain.toMatch());
+        }
+
+        return super.AggregatePair(result);
+    }
+
+    private static int getDiagonal(Match match) {
+        return match.Snippet2.Begin - match.Snippet1.Begin;
+    }
+
+    // Rounds towards negative infinity so that bands have equal widths
+    private int getBand(int diagonal) {
+        int width = Drift + 1;
+        return diagonal >= 0 ? diagonal / width : -((width - 1 - diagonal) / width);
+    }
+
+    private static final Comparator<Chain> ByBegin = new Comparator<Chain>() {
+        @Override
+        public int compare(Chain c1, Chain c2) {
+            return Integer.compare(c1.Begin1, c2.Begin1);
+        }
+    };
+
+    private static class Ending implements Comparable<Ending> {
+        final Chain Chain;
+        final int End1;
+
+        Ending(Chain chain) {
+            Chain = chain;
+            End1 = chain.End1;
+        }
+
+        @Override
+        public int compareTo(Ending ending) {
+            return Integer.compare(End1, ending.End1);
+        }
+    }
+
+    private class Chain {
+        Match First;
+        int Begin1;
+        int End1;
+        int Begin2;
+        int End2;
+        int Diagonal;
+        int Band;
+
+        Chain(Match match) {
+            First = match;
+            Begin1 = match.Snippet1.Begin;
+            End1 = match.Snippet1.End;
+            Begin2 = match.Snippet2.Begin;
+            End2 = match.Snippet2.End;
+        }
+
+        boolean isExtendedBy(Match match, int diagonal) {
+            return Math.abs(diagonal - Diagonal) <= Drift
+                    && match.Snippet1.Begin <= End1 + Gap + 1
+                    && match.Snippet2.Begin <= End2 + Gap + 1
+                    && match.Snippet2.End + Gap + 1 >= Begin2;
+        }
+
+        void Extend(Match match) {
+            End1 = Math.max(End1, match.Snippet1.End);
+            Begin2 = Math.min(Begin2, match.Snippet2.Begin);
+            End2 = Math.max(End2, match.Snippet2.End);
+        }
+
+        Match toMatch() {
+            return new Match(new Snippet(First.Snippet1.Document, Begin1, End1),
+                    new Snippet(First.Snippet2.Document, Begin2, End2));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ *  Document-frequency threshold for fingerprints. A hash that occurs in more
+ *  than MaxDocuments documents, or in more than MaxFraction of all the
+ *  documents being matched, is boilerplate: pairing its postings is quadratic
+ *  in its frequency and yields nothing of interest, so it is dropped before
+ *  any pair is generated.
+ *
+ *  The frequency of a hash counts the distinct documents that contain it,
+ *  over every index passed to Apply, groups and archives alike. Because all
+ *  postings of a hash are in the same shard, applying the cap to each shard
+ *  separately gives the same result as applying it to the whole space.
+ */
+public class FrequencyCap {
+
+    public int MaxDocuments;
+    public double MaxFraction;
+
+    private final AtomicLong SuppressedHashes = new AtomicLong();
+    private final AtomicLong SuppressedPostings = new AtomicLong();
+
+    public FrequencyCap(int maxDocuments, double maxFraction) {
+        MaxDocuments = maxDocuments;
+        MaxFraction = maxFraction;
+    }
+
+    /*
+     *  Parses either a document count ("50") or a percentage of the documents
+     *  ("5%").
+     */
+    public static FrequencyCap Parse(String value) {
+        if (value.endsWith("%")) {
+            double percent = Double.parseDouble(value.substring(0, value.length() - 1));
+            return new FrequencyCap(Integer.MAX_VALUE, percent / 100);
+        }
+        return new FrequencyCap(Integer.parseInt(value), 1);
+    }
+
+    public int getLimit(int documentCount) {
+        return (int) Math.min(MaxDocuments, Math.floor(MaxFraction * documentCount));
+    }
+
+    public long getSuppressedHashes() {
+        return SuppressedHashes.get();
+    }
+
+    public long getSuppressedPostings() {
+        return SuppressedPostings.get();
+    }
+
+    /*
+     *  Counts a hash suppressed outside of Apply, along with its postings.
+     */
+    void Suppress(long postings) {
+        SuppressedHashes.incrementAndGet();
+        SuppressedPostings.addAndGet(postings);
+    }
+
+    /*
+     *  Returns views of the indexes in which the postings of every hash above
+     *  the limit are hidden.
+     */
+    public List<Index> Apply(List<Index> indexList) {
+        int documentCount = 0;
+        for (Index index : indexList) {
+            documentCount += index.getDocumentCount();
+        }
+        int limit = getLimit(documentCount);
+
+        List<BitSet> suppressed = new ArrayList<>();
+        for (Index index : indexList) {
+            suppressed.add(new BitSet(index.getSlots()));
+        }
+
+        int[] slots = new int[indexList.size()];
+        for (int i = 0; i < indexList.size(); i++) {
+            Index index = indexList.get(i);
+            next:
+            for (int slot = 0; slot < index.getSlots(); slot++) {
+                if (index.getCount(slot) == 0) {
+                    continue;
+                }
+                long hash = index.getKey(slot);
+
+                // Every hash is counted from the first index that holds it
+                for (int j = 0; j < i; j++) {
+                    if (indexList.get(j).find(hash) != -1) {
+                        continue next;
+                    }
+                }
+
+                int frequency = 0;
+                for (int j = i; j < indexList.size(); j++) {
+                    slots[j] = j == i ? slot : indexList.get(j).find(hash);
+                    if (slots[j] != -1) {
+                        frequency += getDocumentFrequency(indexList.get(j), slots[j]);
+                    }
+                }
+
+                if (frequency > limit) {
+                    SuppressedHashes.incrementAndGet();
+                    for (int j = i; j < indexList.size(); j++) {
+                        if (slots[j] != -1) {
+                            suppressed.get(j).set(slots[j]);
+                            SuppressedPostings.addAndGet(indexList.get(j).getCount(slots[j]));
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Index> result = new ArrayList<>();
+        for (int i = 0; i < indexList.size(); i++) {
+            result.add(suppressed.get(i).isEmpty() ? indexList.get(i) : new CappedIndex(indexList.get(i), suppressed.get(i)));
+        }
+        return result;
+    }
+
+    /*
+     *  Postings are in document order, so the distinct documents of a slot
+     *  are the runs of equal document ids.
+     */
+    private static int getDocumentFrequency(Index index, int slot) {
+        int frequency = 0;
+        int previous = -1;
+        for (int i = 0; i < index.getCount(slot); i++) {
+            int id = Postings.getDocument(index.getPosting(slot, i));
+            if (id != previous) {
+                frequency++;
+                previous = id;
+            }
+        }
+        return frequency;
+    }
+
+    private static class CappedIndex implements Index {
+
+        private final Index Index;
+        private final BitSet Suppressed;
+
+        CappedIndex(Index index, BitSet suppressed) {
+            Index = index;
+            Suppressed = suppressed;
+        }
+
+        @Override
+        public int getDocumentCount() {
+            return Index.getDocumentCount();
+        }
+
+        @Override
+        public Document getDocument(int id) {
+            return Index.getDocument(id);
+        }
+
+        @Override
+        public int getSlots() {
+            return Index.getSlots();
+        }
+
+        @Override
+        public long getKey(int slot) {
+            return Index.getKey(slot);
+        }
+
+        @Override
+        public int getCount(int slot) {
+            return Suppressed.get(slot) ? 0 : Index.getCount(slot);
+        }
+
+        @Override
+        public long getPosting(int slot, int i) {
+            return Index.getPosting(slot, i);
+        }
+
+        @Override
+        public int find(long hash) {
+            return Index.find(hash);
+        }
+
+        @Override
+        public Snippet getSnippet(long posting) {
+            return Index.getSnippet(posting);
+        }
+    }
+}
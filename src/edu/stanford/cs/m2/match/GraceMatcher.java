@@ -0,0 +1,358 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  N-partite matcher for corpora whose join does not fit in the heap (Grace
+ *  hash join). Every fingerprint, and every posting of the archives, is
+ *  written as a (hash, document, position) record to one of several
+ *  temporary partition files chosen by the top bits of its hash. Matches only
+ *  pair records of equal hashes, so every partition can be joined on its
+ *  own: its records are read back, radix-sorted by hash, and every run of
+ *  equal hashes is turned into (document1, position1, document2, position2)
+ *  tuples that are spilled to a MatchSpill rather than kept in the heap.
+ *
+ *  The number of partitions is chosen so that joining one fits in
+ *  MemoryBudget bytes. A partition that still does not fit, because of
+ *  skewed hashes, is split again on the next bits of its hashes. Only a
+ *  single hash with more postings than the budget allows cannot be split;
+ *  FrequencyCap is the remedy for those.
+ */
+public class GraceMatcher extends NPartiteMatcher {
+
+    public long MemoryBudget;
+    public Path TempDirectory;
+
+    // Bytes of heap per record while a partition is joined: the hashes and
+    // postings, and the sort buffers
+    private static final int JoinBytes = 32;
+
+    // Partition files written to at the same time
+    private static final int MaxFanOut = 256;
+    private static final int BufferSize = 1 << 13;
+
+    private List<Document> Documents;
+    private int[] Owners;
+    private int[] Lengths;
+
+    public GraceMatcher(List<List<Document>> groups, List<MappedIndex> archives, long memoryBudget, Path tempDirectory) {
+        super(groups, archives);
+        if (memoryBudget < JoinBytes) {
+            throw new IllegalArgumentException(String.valueOf(memoryBudget));
+        }
+        MemoryBudget = memoryBudget;
+        TempDirectory = tempDirectory;
+    }
+
+    /*
+     *  Reads the spilled matches back and hands them to the sink; use Spill()
+     *  to keep them on disk.
+     */
+    @Override
+    public void Match(MatchSink sink) {
+        try (MatchSpill spill = Spill();
+                MatchSpill.Reader reader = spill.Read()) {
+            while (reader.Next()) {
+                sink.Add(reader.getMatch());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+     *  Runs the join and returns the spilled matches. The caller owns the
+     *  spill and must close it.
+     */
+    public MatchSpill Spill() throws IOException {
+        Number();
+
+        MatchSpill spill = new MatchSpill(Documents, Lengths, TempDirectory);
+        try {
+            long records = 0;
+            for (List<Document> group : Groups) {
+                for (Document document : group) {
+                    records += document.FingerPrints.Size;
+                }
+            }
+            for (MappedIndex archive : Archives) {
+                for (int slot = 0; slot < archive.getSlots(); slot++) {
+                    records += archive.getCount(slot);
+                }
+            }
+
+            int fanOut = getFanOut(records);
+            Partition partition = new Partition(fanOut, 0);
+            try {
+                int document = 0;
+                for (List<Document> group : Groups) {
+                    for (Document member : group) {
+                        FingerPrints fingerPrints = member.FingerPrints;
+                        for (int i = 0; i < fingerPrints.Size; i++) {
+                            partition.Add(fingerPrints.getHash(i), document, fingerPrints.getPosition(i));
+                        }
+                        document++;
+                    }
+                }
+                for (MappedIndex archive : Archives) {
+                    for (int slot = 0; slot < archive.getSlots(); slot++) {
+                        for (int p = 0; p < archive.getCount(slot); p++) {
+                            long posting = archive.getPosting(slot, p);
+                            partition.Add(archive.getKey(slot), document + Postings.getDocument(posting), Postings.getPosition(posting));
+                        }
+                    }
+                    document += archive.getDocumentCount();
+                }
+                partition.Close();
+
+                for (int p = 0; p < fanOut; p++) {
+                    Join(partition.Parts[p], partition.Sizes[p], Integer.numberOfTrailingZeros(fanOut), spill);
+                }
+            } finally {
+                partition.Delete();
+            }
+        } catch (IOException | RuntimeException ex) {
+            spill.close();
+            throw ex;
+        }
+        return spill;
+    }
+
+    /*
+     *  Numbers the documents of the groups and then of the archives.
+     */
+    private void Number() {
+        Documents = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        for (int i = 0; i < Groups.size(); i++) {
+            for (Document document : Groups.get(i)) {
+                Documents.add(document);
+                owners.add(i);
+                lengths.add(document.FingerPrints.K);
+            }
+        }
+        for (int i = 0; i < Archives.size(); i++) {
+            MappedIndex archive = Archives.get(i);
+            for (int id = 0; id < archive.getDocumentCount(); id++) {
+                Documents.add(archive.getDocument(id));
+                owners.add(Groups.size() + i);
+                lengths.add(archive.K);
+            }
+        }
+
+        Owners = new int[owners.size()];
+        Lengths = new int[lengths.size()];
+        for (int d = 0; d < Owners.length; d++) {
+            Owners[d] = owners.get(d);
+            Lengths[d] = lengths.get(d);
+        }
+    }
+
+    private int getFanOut(long records) {
+        long needed = (records * JoinBytes + MemoryBudget - 1) / MemoryBudget;
+        int fanOut = 1;
+        while (fanOut < needed && fanOut < MaxFanOut) {
+            fanOut <<= 1;
+        }
+        return fanOut;
+    }
+
+    /*
+     *  Joins a partition whose hashes agree on their top bits bits, or splits
+     *  it on the following bits if it is too large for the budget.
+     */
+    private void Join(Path file, long records, int bits, MatchSpill spill) throws IOException {
+        int fanOut = getFanOut(records);
+        if (fanOut > 1 && bits < 64) {
+            fanOut = Math.min(fanOut, 1 << Math.min(8, 64 - bits));
+            Partition partition = new Partition(fanOut, bits);
+            try {
+                boolean split = false;
+                try (DataInputStream input = Open(file)) {
+                    for (long r = 0; r < records; r++) {
+                        partition.Add(input.readLong(), input.readInt(), input.readInt());
+                    }
+                }
+                partition.Close();
+                for (int p = 0; p < fanOut; p++) {
+                    split |= partition.Sizes[p] != 0 && partition.Sizes[p] != records;
+                }
+
+                // A partition made of a single hash cannot be split
+                if (split) {
+                    Files.delete(file);
+                    int childBits = bits + Integer.numberOfTrailingZeros(fanOut);
+                    for (int p = 0; p < fanOut; p++) {
+                        Join(partition.Parts[p], partition.Sizes[p], childBits, spill);
+                    }
+                    return;
+                }
+            } finally {
+                partition.Delete();
+            }
+        }
+
+        if (records > Integer.MAX_VALUE) {
+            throw new IOException("Partition of " + records + " records cannot be joined");
+        }
+        int size = (int) records;
+        long[] hashes = new long[size];
+        long[] postings = new long[size];
+        try (DataInputStream input = Open(file)) {
+            for (int r = 0; r < size; r++) {
+                hashes[r] = input.readLong();
+                postings[r] = Postings.pack(input.readInt(), input.readInt());
+            }
+        }
+        Files.delete(file);
+
+        // Records were written in document and position order, which the
+        // stable sort preserves within every hash
+        RadixSort.Sort(hashes, postings, size);
+
+        int groupCount = Groups.size();
+        int limit = Cap == null ? Integer.MAX_VALUE : Cap.getLimit(Documents.size());
+        for (int begin = 0, end; begin < size; begin = end) {
+            end = begin + 1;
+            int frequency = 1;
+            while (end < size && hashes[end] == hashes[begin]) {
+                if (Postings.getDocument(postings[end]) != Postings.getDocument(postings[end - 1])) {
+                    frequency++;
+                }
+                end++;
+            }
+
+            if (frequency > limit) {
+                Cap.Suppress(end - begin);
+                continue;
+            }
+
+            for (int a = begin; a < end; a++) {
+                int document1 = Postings.getDocument(postings[a]);
+                for (int b = a + 1; b < end; b++) {
+                    int document2 = Postings.getDocument(postings[b]);
+                    if (ScoringMatcher.isPaired(Owners[document1], Owners[document2], groupCount)) {
+                        spill.Add(document1, Postings.getPosition(postings[a]), document2, Postings.getPosition(postings[b]));
+                    }
+                }
+            }
+        }
+    }
+
+    private static DataInputStream Open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BufferSize));
+    }
+
+    /*
+     *  A set of partition files that records are distributed to by the bits
+     *  of their hashes that follow the top Bits bits.
+     */
+    private class Partition {
+
+        final Path[] Parts;
+        final long[] Sizes;
+        private final DataOutputStream[] Outputs;
+        private final int Bits;
+        private final int Width;
+
+        Partition(int fanOut, int bits) throws IOException {
+            Parts = new Path[fanOut];
+            Sizes = new long[fanOut];
+            Outputs = new DataOutputStream[fanOut];
+            Bits = bits;
+            Width = Integer.numberOfTrailingZeros(fanOut);
+            try {
+                for (int p = 0; p < fanOut; p++) {
+                    Parts[p] = Files.createTempFile(TempDirectory, "m2-partition", ".tmp");
+                    Outputs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Parts[p]), BufferSize));
+                }
+            } catch (IOException | RuntimeException ex) {
+                // Remove the files created before the failure
+                try {
+                    Delete();
+                } catch (IOException suppressed) {
+                    ex.addSuppressed(suppressed);
+                }
+                throw ex;
+            }
+        }
+
+        void Add(long hash, int document, int position) throws IOException {
+            int p = Width == 0 ? 0 : (int) ((hash << Bits) >>> (64 - Width));
+            DataOutputStream output = Outputs[p];
+            output.writeLong(hash);
+            output.writeInt(document);
+            output.writeInt(position);
+            Sizes[p]++;
+        }
+
+        // Entries are null if the constructor failed before opening them
+        void Close() throws IOException {
+            for (DataOutputStream output : Outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+
+        void Delete() throws IOException {
+            try {
+                Close();
+            } finally {
+                for (Path file : Parts) {
+                    if (file != null) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+    }
+}
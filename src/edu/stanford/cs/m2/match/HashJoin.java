@@ -0,0 +1,100 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.match.index.FingerPrintIndex;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  Build/probe hash join for bipartite runs. Only the build group, normally
+ *  the smaller one, is indexed; the documents of the other group are probed
+ *  one at a time as they come out of the pipeline, so they never need to be
+ *  held together and their matches are available as soon as they are
+ *  processed.
+ *
+ *  Probing a document yields the same matches as NPartiteMatcher yields for
+ *  it against the build group and the archives. The build group is matched
+ *  against the archives separately, by MatchArchives().
+ */
+public class HashJoin {
+
+    public List<MappedIndex> Archives;
+
+    private final Index Build;
+
+    public HashJoin(List<Document> build, List<MappedIndex> archives) {
+        Build = new FingerPrintIndex(build);
+        Archives = archives;
+    }
+
+    public List<Match> Probe(Document document) {
+        List<Match> matchList = new ArrayList<>();
+
+        Probe(document, Build, matchList);
+        for (MappedIndex archive : Archives) {
+            Probe(document, archive, matchList);
+        }
+
+        return matchList;
+    }
+
+    public List<Match> MatchArchives() {
+        MatchList matchList = new MatchList();
+
+        for (MappedIndex archive : Archives) {
+            NPartiteMatcher.Match(Build, archive, matchList);
+        }
+
+        return matchList.Matches;
+    }
+
+    private static void Probe(Document document, Index index, List<Match> matchList) {
+        FingerPrints fingerPrints = document.FingerPrints;
+        for (int i = 0; i < fingerPrints.Size; i++) {
+            int slot = index.find(fingerPrints.getHash(i));
+            if (slot == -1) {
+                continue;
+            }
+            for (int p = 0; p < index.getCount(slot); p++) {
+                matchList.add(new Match(fingerPrints.getSnippet(document, i), index.getSnippet(index.getPosting(slot, p))));
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.match.index.DynamicIndex;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/*
+ *  N-partite matcher that keeps its group indexes between runs, so late
+ *  submissions can be added, withdrawn or resubmitted without indexing the
+ *  whole class again.
+ *
+ *  Match() only returns the matches that involve a document added or
+ *  replaced since the previous call, which costs time proportional to the
+ *  fingerprints of those documents. Matches of removed documents are never
+ *  reported again; callers holding earlier results should drop the ones that
+ *  refer to them. MatchAll() still returns every match of the current state.
+ *  Between runs of the CLI, the state is kept in an index file written by
+ *  IndexWriter, from which unchanged documents are restored.
+ */
+public class IncrementalMatcher implements Matcher {
+
+    private final List<DynamicIndex> Groups = new ArrayList<>();
+    private final List<BitSet> Changed = new ArrayList<>();
+    public List<MappedIndex> Archives;
+
+    public IncrementalMatcher(int groupCount) {
+        this(groupCount, new ArrayList<MappedIndex>());
+    }
+
+    public IncrementalMatcher(int groupCount, List<MappedIndex> archives) {
+        for (int i = 0; i < groupCount; i++) {
+            Groups.add(new DynamicIndex());
+            Changed.add(new BitSet());
+        }
+        Archives = archives;
+    }
+
+    public IncrementalMatcher(List<List<Document>> groups, List<MappedIndex> archives) {
+        this(groups.size(), archives);
+        for (int i = 0; i < groups.size(); i++) {
+            for (Document document : groups.get(i)) {
+                Add(i, document);
+            }
+        }
+    }
+
+    public void Add(int group, Document document) {
+        Changed.get(group).set(Groups.get(group).Add(document));
+    }
+
+    /*
+     *  Indexes a document whose matches were reported by an earlier run, so
+     *  that it is only matched against documents added or replaced later.
+     */
+    public void Restore(int group, Document document) {
+        Groups.get(group).Add(document);
+    }
+
+    public void Remove(int group, Document document) {
+        int id = Groups.get(group).Remove(document);
+        if (id != -1) {
+            Changed.get(group).clear(id);
+        }
+    }
+
+    public void Replace(int group, Document previous, Document document) {
+        Remove(group, previous);
+        Add(group, document);
+    }
+
+    @Override
+    public List<Match> Match() {
+        MatchList matchList = new MatchList();
+        Match(matchList);
+        return matchList.Matches;
+    }
+
+    @Override
+    public void Match(MatchSink sink) {
+        for (int group = 0; group < Groups.size(); group++) {
+            BitSet changed = Changed.get(group);
+            for (int id = changed.nextSetBit(0); id >= 0; id = changed.nextSetBit(id + 1)) {
+                Probe(group, id, sink);
+            }
+        }
+
+        for (BitSet changed : Changed) {
+            changed.clear();
+        }
+    }
+
+    public List<Match> MatchAll() {
+        List<Index> indexList = new ArrayList<Index>(Groups);
+        indexList.addAll(Archives);
+
+        MatchList matchList = new MatchList();
+        NPartiteMatcher.Match(indexList, Groups.size(), matchList);
+        return matchList.Matches;
+    }
+
+    /*
+     *  Looks up every fingerprint of a changed document in the indexes it is
+     *  matched against. A pair of changed documents is reported only when the
+     *  other document comes later in (group, id) order, and a document
+     *  matched with itself only when the other position is later.
+     */
+    private void Probe(int group, int id, MatchSink sink) {
+        DynamicIndex index = Groups.get(group);
+        Document document = index.getDocument(id);
+        int groupCount = Groups.size();
+
+        for (int i = 0; i < document.FingerPrints.Size; i++) {
+            long hash = document.FingerPrints.getHash(i);
+            int position = document.FingerPrints.getPosition(i);
+
+            for (int other = 0; other < groupCount + Archives.size(); other++) {
+                if (other == group && groupCount != 1) {
+                    continue;
+                }
+
+                Index target = other < groupCount ? Groups.get(other) : Archives.get(other - groupCount);
+                int slot = target.find(hash);
+                if (slot == -1) {
+                    continue;
+                }
+
+                BitSet changed = other < groupCount ? Changed.get(other) : null;
+                for (int b = 0; b < target.getCount(slot); b++) {
+                    long posting = target.getPosting(slot, b);
+                    int otherId = Postings.getDocument(posting);
+
+                    if (changed != null && changed.get(otherId)) {
+                        if (other < group || (other == group && (otherId < id
+                                || (otherId == id && Postings.getPosition(posting) <= position)))) {
+                            continue;
+                        }
+                    }
+
+                    sink.Add(new Match(index.getSnippet(Postings.pack(id, position)),
+                            target.getSnippet(posting)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  Matches spilled to a temporary file as (document1, position1, document2,
+ *  position2) int tuples, 16 bytes each, so that a run can produce more
+ *  matches than fit in the heap. Documents are numbered by their position in
+ *  the document table, and the snippets of document d are Lengths[d] tokens
+ *  long. The table is either given up front or filled in as matches are
+ *  added.
+ *
+ *  Tuples are appended until the spill is first read; closing the spill
+ *  deletes its file.
+ */
+public class MatchSpill implements Closeable {
+
+    public static final int TupleSize = 16;
+    public static final int BufferSize = 1 << 16;
+
+    // Bytes of heap per tuple while a run is sorted: the keys and values,
+    // and the sort buffers
+    private static final int SortBytes = 32;
+
+    // Runs merged at once
+    private static final int FanIn = 64;
+
+    public final Path Path;
+
+    private final List<Document> Documents;
+    private int[] Lengths;
+    private final Map<Document, Integer> Ids;
+    private final Path Directory;
+
+    private DataOutputStream Output;
+    private long Size;
+
+    public MatchSpill(List<Document> documents, int[] lengths, Path directory) throws IOException {
+        this(documents, lengths, null, directory);
+    }
+
+    /*
+     *  Creates a spill whose document table is filled in by Add(Match).
+     */
+    public MatchSpill(Path directory) throws IOException {
+        this(new ArrayList<Document>(), new int[16], new IdentityHashMap<Document, Integer>(), directory);
+    }
+
+    private MatchSpill(List<Document> documents, int[] lengths, Map<Document, Integer> ids, Path directory) throws IOException {
+        Documents = documents;
+        Lengths = lengths;
+        Ids = ids;
+        Directory = directory;
+        Path = Files.createTempFile(directory, "m2-matches", ".tmp");
+        Output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Path), BufferSize));
+    }
+
+    public void Add(int document1, int position1, int document2, int position2) throws IOException {
+        Output.writeInt(document1);
+        Output.writeInt(position1);
+        Output.writeInt(document2);
+        Output.writeInt(position2);
+        Size++;
+    }
+
+    public void Add(Match match) throws IOException {
+        if (Ids == null) {
+            throw new IllegalStateException("The document table of this spill is fixed");
+        }
+        Add(getId(match.Snippet1), match.Snippet1.Begin, getId(match.Snippet2), match.Snippet2.Begin);
+    }
+
+    private int getId(Snippet snippet) {
+        return getId(snippet.Document, snippet.getLength());
+    }
+
+    private int getId(Document document, int length) {
+        Integer id = Ids.get(document);
+        if (id == null) {
+            id = Documents.size();
+            Documents.add(document);
+            Ids.put(document, id);
+            if (id == Lengths.length) {
+                Lengths = Arrays.copyOf(Lengths, 2 * id);
+            }
+            Lengths[id] = length;
+        }
+        return id;
+    }
+
+    /*
+     *  Spills the matches of any matcher as they are generated, so that they
+     *  can be sorted and aggregated one document pair at a time without ever
+     *  being held in the heap.
+     */
+    public static MatchSpill Spill(Matcher matcher, Path directory) throws IOException {
+        if (matcher instanceof GraceMatcher) {
+            return ((GraceMatcher) matcher).Spill();
+        }
+
+        final MatchSpill spill = new MatchSpill(directory);
+        try {
+            // Number the documents up front, so that the order of the sorted
+            // pairs does not depend on the order the matches arrive in
+            if (matcher instanceof NPartiteMatcher) {
+                NPartiteMatcher nPartite = (NPartiteMatcher) matcher;
+                for (List<Document> group : nPartite.Groups) {
+                    for (Document document : group) {
+                        spill.getId(document, document.FingerPrints.K);
+                    }
+                }
+                for (MappedIndex archive : nPartite.Archives) {
+                    for (int id = 0; id < archive.getDocumentCount(); id++) {
+                        spill.getId(archive.getDocument(id), archive.K);
+                    }
+                }
+            }
+
+            matcher.Match(new MatchSink() {
+                @Override
+                public void Add(Match match) {
+                    try {
+                        spill.Add(match);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            spill.close();
+            throw ex.getCause();
+        } catch (RuntimeException ex) {
+            spill.close();
+            throw ex;
+        }
+        return spill;
+    }
+
+    public long getSize() {
+        return Size;
+    }
+
+    /*
+     *  Returns a new spill of the same matches, sorted by document pair and
+     *  then by positions, using runs of at most memoryBudget bytes that are
+     *  merged FanIn at a time. Every tuple is first turned so that its first
+     *  document comes first in the table, which puts all matches of a pair
+     *  next to each other.
+     */
+    public MatchSpill Sort(long memoryBudget) throws IOException {
+        int runSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, memoryBudget / SortBytes));
+        long[] pairs = new long[(int) Math.min(runSize, Math.max(1, Size))];
+        long[] positions = new long[pairs.length];
+
+        List<MatchSpill> runs = new ArrayList<>();
+        try {
+            try (Reader reader = Read()) {
+                int n = 0;
+                while (true) {
+                    boolean more = reader.Next();
+                    if (n == pairs.length || (!more && n > 0)) {
+                        runs.add(WriteRun(pairs, positions, n));
+                        n = 0;
+                    }
+                    if (!more) {
+                        break;
+                    }
+                    int document1 = reader.Document1;
+                    int position1 = reader.Position1;
+                    int document2 = reader.Document2;
+                    int position2 = reader.Position2;
+                    if (document1 > document2 || (document1 == document2 && position1 > position2)) {
+                        document1 = reader.Document2;
+                        position1 = reader.Position2;
+                        document2 = reader.Document1;
+                        position2 = reader.Position1;
+                    }
+                    pairs[n] = getKey(document1, document2);
+                    positions[n++] = getKey(position1, position2);
+                }
+            }
+            pairs = null;
+            positions = null;
+
+            if (runs.isEmpty()) {
+                runs.add(NewSpill());
+            }
+
+            while (runs.size() > 1) {
+                List<MatchSpill> merged = new ArrayList<>();
+                for (int begin = 0; begin < runs.size(); begin += FanIn) {
+                    List<MatchSpill> group = runs.subList(begin, Math.min(runs.size(), begin + FanIn));
+                    merged.add(Merge(group));
+                    for (MatchSpill run : group) {
+                        run.close();
+                    }
+                }
+                runs = merged;
+            }
+            return runs.remove(0);
+        } finally {
+            for (MatchSpill run : runs) {
+                run.close();
+            }
+        }
+    }
+
+    private static long getKey(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    private MatchSpill NewSpill() throws IOException {
+        return new MatchSpill(Documents, Lengths, Ids, Directory);
+    }
+
+    private MatchSpill WriteRun(long[] pairs, long[] positions, int size) throws IOException {
+        // Sort by positions, then stably by pair
+        RadixSort.Sort(positions, pairs, size);
+        RadixSort.Sort(pairs, positions, size);
+
+        MatchSpill run = NewSpill();
+        for (int i = 0; i < size; i++) {
+            run.Add((int) (pairs[i] >>> 32), (int) (positions[i] >>> 32), (int) pairs[i], (int) positions[i]);
+        }
+        run.Finish();
+        return run;
+    }
+
+    /*
+     *  Merges sorted runs through a binary heap of their current tuples.
+     */
+    private MatchSpill Merge(List<MatchSpill> runs) throws IOException {
+        MatchSpill merged = NewSpill();
+        Reader[] readers = new Reader[runs.size()];
+        int[] heap = new int[runs.size()];
+        int size = 0;
+        try {
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = runs.get(r).Read();
+                if (readers[r].Next()) {
+                    heap[size] = r;
+                    SiftUp(heap, size++, readers);
+                }
+            }
+
+            while (size > 0) {
+                Reader reader = readers[heap[0]];
+                merged.Add(reader.Document1, reader.Position1, reader.Document2, reader.Position2);
+                if (!reader.Next()) {
+                    heap[0] = heap[--size];
+                }
+                SiftDown(heap, size, readers);
+            }
+        } finally {
+            for (Reader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+        merged.Finish();
+        return merged;
+    }
+
+    private static boolean isBefore(Reader reader1, Reader reader2) {
+        long pair1 = getKey(reader1.Document1, reader1.Document2);
+        long pair2 = getKey(reader2.Document1, reader2.Document2);
+        if (pair1 != pair2) {
+            return pair1 < pair2;
+        }
+        return getKey(reader1.Position1, reader1.Position2) < getKey(reader2.Position1, reader2.Position2);
+    }
+
+    private static void SiftUp(int[] heap, int i, Reader[] readers) {
+        while (i > 0 && isBefore(readers[heap[i]], readers[heap[(i - 1) / 2]])) {
+            Swap(heap, i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private static void SiftDown(int[] heap, int size, Reader[] readers) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && isBefore(readers[heap[child + 1]], readers[heap[child]])) {
+                child++;
+            }
+            if (!isBefore(readers[heap[child]], readers[heap[i]])) {
+                return;
+            }
+            Swap(heap, i, child);
+            i = child;
+        }
+    }
+
+    private static void Swap(int[] heap, int i, int j) {
+        int swap = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swap;
+    }
+
+    public Reader Read() throws IOException {
+        Finish();
+        return new Reader();
+    }
+
+    /*
+     *  Closes the output, so that the runs of a sort do not hold a file
+     *  descriptor each until they are merged.
+     */
+    private void Finish() throws IOException {
+        if (Output != null) {
+            Output.close();
+            Output = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Finish();
+        Files.deleteIfExists(Path);
+    }
+
+    public class Reader implements Closeable {
+
+        public int Document1;
+        public int Position1;
+        public int Document2;
+        public int Position2;
+
+        private final DataInputStream Input;
+        private long Remaining = Size;
+        private boolean Pending;
+
+        private Reader() throws IOException {
+            Input = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path), BufferSize));
+        }
+
+        public boolean Next() throws IOException {
+            if (Remaining == 0) {
+                return false;
+            }
+            Document1 = Input.readInt();
+            Position1 = Input.readInt();
+            Document2 = Input.readInt();
+            Position2 = Input.readInt();
+            Remaining--;
+            return true;
+        }
+
+        /*
+         *  Reads all the matches of the next document pair of a sorted spill,
+         *  or returns null at its end. Must not be mixed with Next().
+         */
+        public List<Match> NextPair() throws IOException {
+            if (!Pending && !Next()) {
+                return null;
+            }
+            int document1 = Document1;
+            int document2 = Document2;
+
+            List<Match> matchList = new ArrayList<>();
+            do {
+                matchList.add(getMatch());
+                Pending = Next();
+            } while (Pending && Document1 == document1 && Document2 == document2);
+            return matchList;
+        }
+
+        public Match getMatch() {
+            return new Match(
+                    new Snippet(Documents.get(Document1), Position1, Position1 + Lengths[Document1] - 1),
+                    new Snippet(Documents.get(Document2), Position2, Position2 + Lengths[Document2] - 1));
+        }
+
+        @Override
+        public void close() throws IOException {
+            Input.close();
+        }
+    }
+}
@@ -39,4 +39,10 @@ import java.util.List;
 
 public interface Matcher {
     public List<Match> Match();
+    
+    /*
+     *  Reports the same matches as Match() to the sink as they are generated,
+     *  without collecting them.
+     */
+    public void Match(MatchSink sink);
 }
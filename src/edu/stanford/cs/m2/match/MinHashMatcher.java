@@ -0,0 +1,234 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.hash.RollingHash;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Approximate N-partite matcher for cohorts too large for the exact join.
+ *
+ *  Every document gets a MinHash sketch of Bands * Rows values: the minimum,
+ *  over its distinct fingerprints, of each of Bands * Rows hash functions.
+ *  Two documents agree on a sketch value with probability equal to the
+ *  Jaccard similarity of their fingerprint sets. The sketch is cut into bands
+ *  of Rows values, and documents whose values agree on a whole band share an
+ *  LSH bucket; documents sharing a bucket in any band are candidates. A pair
+ *  of similarity s is a candidate with probability 1 - (1 - s^Rows)^Bands,
+ *  an S-curve that rises around (1 / Bands)^(1 / Rows).
+ *
+ *  Only candidate pairs are matched, by looking up the fingerprints of the
+ *  first document in the index of the second one, so the cost no longer
+ *  depends on how many documents share common fingerprints. Sketches are
+ *  computed from the indexes, which makes archives work like groups.
+ */
+public class MinHashMatcher extends NPartiteMatcher implements PairScorer {
+
+    public int Bands;
+    public int Rows;
+
+    private final long[] Seeds;
+
+    public MinHashMatcher(List<List<Document>> groups, List<MappedIndex> archives, int bands, int rows) {
+        super(groups, archives);
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException(bands + ", " + rows);
+        }
+        Bands = bands;
+        Rows = rows;
+
+        Seeds = new long[bands * rows];
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < Seeds.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            Seeds[i] = RollingHash.mix(seed);
+        }
+    }
+
+    /*
+     *  Returns the candidate pairs, with the number of bands in which they
+     *  collide as the shared count and the fraction of equal sketch values,
+     *  an estimate of their Jaccard similarity, as the score.
+     */
+    @Override
+    public List<ScoredPair> Score() {
+        List<Index> indexList = getIndexes();
+        int[] offsets = ScoringMatcher.getOffsets(indexList);
+        int[] owners = getOwners(offsets);
+        long[] sketches = Sketch(indexList, offsets);
+        PairCounts candidates = Band(sketches, owners);
+
+        int n = Bands * Rows;
+        List<ScoredPair> pairs = new ArrayList<>();
+        for (int slot = 0; slot < candidates.getSlots(); slot++) {
+            if (candidates.getCountAt(slot) == 0) {
+                continue;
+            }
+            long pair = candidates.getKey(slot);
+            int document1 = PairCounts.getFirst(pair);
+            int document2 = PairCounts.getSecond(pair);
+            int equal = 0;
+            for (int i = 0; i < n; i++) {
+                if (sketches[document1 * n + i] == sketches[document2 * n + i]) {
+                    equal++;
+                }
+            }
+            pairs.add(new ScoredPair(
+                    indexList.get(owners[document1]).getDocument(document1 - offsets[owners[document1]]),
+                    indexList.get(owners[document2]).getDocument(document2 - offsets[owners[document2]]),
+                    candidates.getCountAt(slot), (double) equal / n));
+        }
+        return pairs;
+    }
+
+    @Override
+    public void Match(MatchSink sink) {
+        List<Index> indexList = getIndexes();
+        int[] offsets = ScoringMatcher.getOffsets(indexList);
+        int[] owners = getOwners(offsets);
+        PairCounts candidates = Band(Sketch(indexList, offsets), owners);
+
+        for (int slot = 0; slot < candidates.getSlots(); slot++) {
+            if (candidates.getCountAt(slot) == 0) {
+                continue;
+            }
+            long pair = candidates.getKey(slot);
+            int document1 = PairCounts.getFirst(pair);
+            int document2 = PairCounts.getSecond(pair);
+            Index index1 = indexList.get(owners[document1]);
+            Index index2 = indexList.get(owners[document2]);
+            Match(index1, document1 - offsets[owners[document1]], index2, document2 - offsets[owners[document2]], sink);
+        }
+    }
+
+    /*
+     *  Computes the sketches of all documents, Bands * Rows values each, from
+     *  the distinct documents of every posting list. Documents without
+     *  fingerprints keep a sketch of Long.MAX_VALUE.
+     */
+    private long[] Sketch(List<Index> indexList, int[] offsets) {
+        int n = Seeds.length;
+        long[] sketches = new long[offsets[indexList.size()] * n];
+        Arrays.fill(sketches, Long.MAX_VALUE);
+        long[] values = new long[n];
+
+        for (int i = 0; i < indexList.size(); i++) {
+            Index index = indexList.get(i);
+            for (int slot = 0; slot < index.getSlots(); slot++) {
+                int count = index.getCount(slot);
+                if (count == 0) {
+                    continue;
+                }
+                long hash = index.getKey(slot);
+                for (int k = 0; k < n; k++) {
+                    values[k] = RollingHash.mix(hash ^ Seeds[k]);
+                }
+
+                int previous = -1;
+                for (int p = 0; p < count; p++) {
+                    int id = Postings.getDocument(index.getPosting(slot, p));
+                    if (id == previous) {
+                        continue;
+                    }
+                    previous = id;
+                    int base = (offsets[i] + id) * n;
+                    for (int k = 0; k < n; k++) {
+                        if (values[k] < sketches[base + k]) {
+                            sketches[base + k] = values[k];
+                        }
+                    }
+                }
+            }
+        }
+        return sketches;
+    }
+
+    /*
+     *  Buckets the documents by each band of their sketches and collects the
+     *  pairs of documents that share a bucket and may be matched. A bucket
+     *  key is the hash of the band with its low bits replaced by the document
+     *  number, so that sorting the keys of a band groups its buckets; the rare
+     *  bands whose truncated hashes collide only add candidates.
+     */
+    private PairCounts Band(long[] sketches, int[] owners) {
+        int n = Seeds.length;
+        int documentCount = owners.length;
+        int groupCount = Groups.size();
+        int documentBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(documentCount - 1));
+        long documentMask = (1L << documentBits) - 1;
+
+        PairCounts candidates = new PairCounts();
+        long[] keys = new long[documentCount];
+
+        for (int band = 0; band < Bands; band++) {
+            int size = 0;
+            for (int document = 0; document < documentCount; document++) {
+                int base = document * n + band * Rows;
+                if (sketches[base] == Long.MAX_VALUE) {
+                    continue;
+                }
+                long key = band;
+                for (int r = 0; r < Rows; r++) {
+                    key = RollingHash.mix(key * 0x100000001B3L + sketches[base + r]);
+                }
+                keys[size++] = (key & ~documentMask) | document;
+            }
+            Arrays.sort(keys, 0, size);
+
+            for (int begin = 0, end; begin < size; begin = end) {
+                end = begin + 1;
+                while (end < size && (keys[end] & ~documentMask) == (keys[begin] & ~documentMask)) {
+                    end++;
+                }
+                for (int a = begin; a < end; a++) {
+                    int document1 = (int) (keys[a] & documentMask);
+                    for (int b = a + 1; b < end; b++) {
+                        int document2 = (int) (keys[b] & documentMask);
+                        if (ScoringMatcher.isPaired(owners[document1], owners[document2], groupCount)) {
+                            candidates.Increment(PairCounts.pack(document1, document2));
+                        }
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+}
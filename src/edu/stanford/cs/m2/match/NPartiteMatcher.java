@@ -35,78 +35,168 @@
 package edu.stanford.cs.m2.match;
 
 import edu.stanford.cs.m2.document.Document;
-import edu.stanford.cs.m2.document.Snippet;
-import edu.stanford.cs.m2.document.hash.Hash;
-import edu.stanford.cs.m2.document.language.Language;
-import edu.stanford.cs.m2.document.language.Support;
-import java.util.HashMap;
-import java.util.LinkedList;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.match.index.FingerPrintIndex;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 public class NPartiteMatcher implements Matcher {
     
     public List<List<Document>> Groups;
+    public List<MappedIndex> Archives;
+    
+    // Optional threshold on the document frequency of fingerprints
+    public FrequencyCap Cap;
     
     public NPartiteMatcher(List<List<Document>> groups) {
+        this(groups, new ArrayList<MappedIndex>());
+    }
+    
+    /*
+     *  Archives are persisted indexes probed as extra groups: every group is
+     *  matched against them, but they are not matched against each other.
+     */
+    public NPartiteMatcher(List<List<Document>> groups, List<MappedIndex> archives) {
         Groups = groups;
+        Archives = archives;
     }
     
     @Override
     public List<Match> Match() {
-
-        // Computing approximate hash table size
-        int size = 0;
+        MatchList matchList = new MatchList();
+        
+        Match(matchList);
+        
+        return matchList.Matches;
+    }
+    
+    @Override
+    public void Match(MatchSink sink) {
+        Match(getIndexes(), Groups.size(), sink);
+    }
+    
+    /*
+     *  Creates one fingerprint index per group, followed by the archives.
+     */
+    protected List<Index> getIndexes() {
+        List<Index> indexList = new ArrayList<>();
+        
         for (List<Document> group : Groups) {
-            for (Document document : group) {
-                size += document.Hashes.size();
+            indexList.add(new FingerPrintIndex(group));
+        }
+        
+        indexList.addAll(Archives);
+        
+        if (Cap != null) {
+            indexList = Cap.Apply(indexList);
+        }
+        
+        return indexList;
+    }
+    
+    /*
+     *  Maps every document number of an index list, as numbered by the
+     *  offsets of its indexes, to the index that holds it.
+     */
+    static int[] getOwners(int[] offsets) {
+        int[] owners = new int[offsets[offsets.length - 1]];
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            Arrays.fill(owners, offsets[i], offsets[i + 1], i);
+        }
+        return owners;
+    }
+    
+    /*
+     *  Generates the matches between every two indexes, or within the first
+     *  one if there is only one group, given an index per group followed by
+     *  the archives.
+     */
+    protected static void Match(List<Index> indexList, int groupCount, MatchSink sink) {
+        for (int i = 0; i < groupCount; i++) {
+            for (int j = i; j < indexList.size(); j++) {
+                if (i != j || groupCount == 1) {
+                    Match(indexList.get(i), indexList.get(j), sink);
+                }
             }
         }
-
-        // Create the master match table list
-        List<Map<Integer, List<Snippet>>> matchTableList = new LinkedList<>();
+    }
+    
+    /*
+     *  Adds a match for every pair of postings that share a hash, one from
+     *  each index. When both indexes are the same, every unordered pair of
+     *  distinct postings is matched once.
+     */
+    public static void Match(Index index1, Index index2, MatchSink sink) {
+        boolean self = index1 == index2;
         
-        for (List<Document> group : Groups) {
-            Map<Integer, List<Snippet>> MatchTable = new HashMap<>(size);
+        // Walk the smaller table and probe the larger one
+        if (index1.getSlots() > index2.getSlots()) {
+            Index swap = index1;
+            index1 = index2;
+            index2 = swap;
+        }
+        
+        for (int slot1 = 0; slot1 < index1.getSlots(); slot1++) {
+            int count1 = index1.getCount(slot1);
+            if (count1 == 0) {
+                continue;
+            }
             
-            for (Document document : group) {
-                for (Hash hash : document.Hashes) {
-
-                    // Set up lists for hash key (if they don't exist)
-                    if (!MatchTable.containsKey(hash.Value)) {
-                        List<Snippet> newList = new LinkedList<>();
-                        MatchTable.put(hash.Value, newList);
-                    }
-                    
-                    MatchTable.get(hash.Value).add(hash.Snippet);
-                }
+            int slot2 = self ? slot1 : index2.find(index1.getKey(slot1));
+            if (slot2 == -1) {
+                continue;
             }
             
-            matchTableList.add(MatchTable);
+            int count2 = index2.getCount(slot2);
+            for (int a = 0; a < count1; a++) {
+                long posting1 = index1.getPosting(slot1, a);
+                for (int b = self ? a + 1 : 0; b < count2; b++) {
+                    sink.Add(new Match(index1.getSnippet(posting1),
+                            index2.getSnippet(index2.getPosting(slot2, b))));
+                }
+            }
         }
-        
-        List<Match> matchList = new LinkedList<>();
+    }
+    
+    /*
+     *  Adds a match for every fingerprint of one document and every posting of
+     *  the same hash in another, which costs a lookup per fingerprint instead
+     *  of a walk over both indexes. The first document must belong to a
+     *  group, so that its fingerprints are at hand; postings are sorted, so
+     *  those of the second document are found by binary search.
+     */
+    protected static void Match(Index index1, int id1, Index index2, int id2, MatchSink sink) {
+        FingerPrints fingerPrints = index1.getDocument(id1).FingerPrints;
+        for (int f = 0; f < fingerPrints.Size; f++) {
+            int slot = index2.find(fingerPrints.getHash(f));
+            if (slot == -1) {
+                continue;
+            }
 
-        // Generate matches
-        for (int i = 0; i < Groups.size(); i++) {
-            for (int j = i; j < Groups.size(); j++) {
-                if (i != j || Groups.size() == 1) {
-                    Set<Integer> hashKeys = matchTableList.get(i).keySet();
-                    hashKeys.retainAll(matchTableList.get(j).keySet());
-                    for (int hashKey : hashKeys) {
-                        for (Snippet snippet1 : matchTableList.get(i).get(hashKey)) {
-                            for (Snippet snippet2 : matchTableList.get(j).get(hashKey)) {
-                                if (!snippet1.equals(snippet2)) {
-                                    matchList.add(new Match(snippet1, snippet2));
-                                }
-                            }
-                        }
-                    }
+            int count = index2.getCount(slot);
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (Postings.getDocument(index2.getPosting(slot, middle)) < id2) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
                 }
             }
+
+            long posting1 = Postings.pack(id1, fingerPrints.getPosition(f));
+            for (int p = low; p < count; p++) {
+                long posting2 = index2.getPosting(slot, p);
+                if (Postings.getDocument(posting2) != id2) {
+                    break;
+                }
+                sink.Add(new Match(index1.getSnippet(posting1), index2.getSnippet(posting2)));
+            }
         }
-        
-        return matchList;
     }
 }
@@ -0,0 +1,138 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+
+/*
+ *  Open-addressing table from document pairs, packed into longs, to counts.
+ *  Counts are never zero, so a zero count marks a free slot.
+ */
+class PairCounts {
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    PairCounts() {
+        keys = new long[1024];
+        counts = new int[1024];
+    }
+
+    static long pack(int document1, int document2) {
+        return ((long) document1 << 32) | (document2 & 0xffffffffL);
+    }
+
+    static int getFirst(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    static int getSecond(long pair) {
+        return (int) pair;
+    }
+
+    void Increment(long pair) {
+        int mask = keys.length - 1;
+        int slot = spread(pair) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == pair) {
+                counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Keep the load factor under 1/2
+        if (2 * (size + 1) > keys.length) {
+            grow();
+            Increment(pair);
+            return;
+        }
+
+        keys[slot] = pair;
+        counts[slot] = 1;
+        size++;
+    }
+
+    int getCount(long pair) {
+        int mask = keys.length - 1;
+        int slot = spread(pair) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == pair) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getSlots() {
+        return keys.length;
+    }
+
+    long getKey(int slot) {
+        return keys[slot];
+    }
+
+    int getCountAt(int slot) {
+        return counts[slot];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = spread(oldKeys[i]) & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int spread(long pair) {
+        long h = pair * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+/*
+ *  Bounded min-heap of scored document pairs that keeps the best Capacity
+ *  pairs offered to it. Pairs are ordered by score, then by pair, so that the
+ *  result does not depend on the order in which they are offered.
+ */
+class PairHeap {
+
+    private final long[] pairs;
+    private final double[] scores;
+    private final int[] shared;
+    private int size;
+
+    PairHeap(int capacity) {
+        pairs = new long[capacity];
+        scores = new double[capacity];
+        shared = new int[capacity];
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /*
+     *  Returns whether a pair with this score could still enter the heap.
+     */
+    boolean isCandidate(double score) {
+        return size < pairs.length || score >= scores[0];
+    }
+
+    void Offer(long pair, double score, int count) {
+        if (size < pairs.length) {
+            pairs[size] = pair;
+            scores[size] = score;
+            shared[size] = count;
+            SiftUp(size++);
+        } else if (isWorse(pairs[0], scores[0], pair, score)) {
+            pairs[0] = pair;
+            scores[0] = score;
+            shared[0] = count;
+            SiftDown(0, size);
+        }
+    }
+
+    /*
+     *  Empties the heap into the arrays, best pair first.
+     */
+    void Drain(long[] pairsOut, double[] scoresOut, int[] sharedOut) {
+        for (int n = size; n > 0; n--) {
+            pairsOut[n - 1] = pairs[0];
+            scoresOut[n - 1] = scores[0];
+            sharedOut[n - 1] = shared[0];
+            Swap(0, n - 1);
+            SiftDown(0, n - 1);
+        }
+        size = 0;
+    }
+
+    private static boolean isWorse(long pair1, double score1, long pair2, double score2) {
+        return score1 < score2 || (score1 == score2 && pair1 > pair2);
+    }
+
+    private void SiftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isWorse(pairs[i], scores[i], pairs[parent], scores[parent])) {
+                return;
+            }
+            Swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void SiftDown(int i, int size) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && isWorse(pairs[child + 1], scores[child + 1], pairs[child], scores[child])) {
+                child++;
+            }
+            if (!isWorse(pairs[child], scores[child], pairs[i], scores[i])) {
+                return;
+            }
+            Swap(i, child);
+            i = child;
+        }
+    }
+
+    private void Swap(int i, int j) {
+        long pair = pairs[i];
+        pairs[i] = pairs[j];
+        pairs[j] = pair;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        int count = shared[i];
+        shared[i] = shared[j];
+        shared[j] = count;
+    }
+}
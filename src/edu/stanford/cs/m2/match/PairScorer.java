@@ -32,18 +32,13 @@
  *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
  *
  */
+package edu.stanford.cs.m2.match;
 
-package edu.stanford.cs.m2.document.hash;
+import java.util.List;
 
-import edu.stanford.cs.m2.document.Snippet;
-import edu.stanford.cs.m2.document.parse.Symbol;
-
-public class Hash {
-    public int Value;
-    public Snippet Snippet;
-    
-    public Hash(int value, Snippet snippet) {
-        Value = value;
-        Snippet = snippet;
-    }
+/*
+ *  A matcher that can rank document pairs without matching their snippets.
+ */
+public interface PairScorer extends Matcher {
+    public List<ScoredPair> Score();
 }
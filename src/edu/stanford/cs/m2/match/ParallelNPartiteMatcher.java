@@ -0,0 +1,208 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.match.index.FingerPrintShards;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ *  NPartiteMatcher with the fingerprint space split into 2^ShardBits shards
+ *  by the top bits of the hashes. Matches only ever pair postings of the same
+ *  hash, so shards are independent. The fingerprints of every group are split
+ *  by shard once; each shard then indexes its own share of every group and
+ *  joins them, along with its share of the archives, on a pool thread into
+ *  its own sink. Match() gives every shard its own list and concatenates
+ *  them in shard order, so its result does not depend on the number of
+ *  threads.
+ */
+public class ParallelNPartiteMatcher extends NPartiteMatcher {
+
+    public int Threads;
+    public int ShardBits;
+
+    public ParallelNPartiteMatcher(List<List<Document>> groups, int threads) {
+        this(groups, new ArrayList<MappedIndex>(), threads);
+    }
+
+    public ParallelNPartiteMatcher(List<List<Document>> groups, List<MappedIndex> archives, int threads) {
+        // A few shards per thread even out the load of uneven shards
+        this(groups, archives, threads, 32 - Integer.numberOfLeadingZeros(4 * threads - 1));
+    }
+
+    public ParallelNPartiteMatcher(List<List<Document>> groups, List<MappedIndex> archives, int threads, int shardBits) {
+        super(groups, archives);
+        if (threads < 1 || shardBits < 0 || shardBits > 16) {
+            throw new IllegalArgumentException(threads + ", " + shardBits);
+        }
+        Threads = threads;
+        ShardBits = shardBits;
+    }
+
+    @Override
+    public List<Match> Match() {
+        List<MatchList> lists = new ArrayList<>();
+        for (int shard = 0; shard < 1 << ShardBits; shard++) {
+            lists.add(new MatchList());
+        }
+        Run(lists);
+
+        int size = 0;
+        for (MatchList list : lists) {
+            size += list.Matches.size();
+        }
+
+        List<Match> matchList = new ArrayList<>(size);
+        for (MatchList list : lists) {
+            matchList.addAll(list.Matches);
+        }
+        return matchList;
+    }
+
+    /*
+     *  Hands the matches of every shard to the sink in batches as they are
+     *  generated, so that at most a batch per thread is held in the heap.
+     *  Batches of different shards interleave, so unlike Match(), the order
+     *  of the matches varies from run to run.
+     */
+    @Override
+    public void Match(MatchSink sink) {
+        List<Batch> batches = new ArrayList<>();
+        for (int shard = 0; shard < 1 << ShardBits; shard++) {
+            batches.add(new Batch(sink));
+        }
+        Run(batches);
+    }
+
+    /*
+     *  Joins every shard into its own sink on the pool.
+     */
+    private void Run(List<? extends MatchSink> sinks) {
+        List<FingerPrintShards> groupShards = new ArrayList<>();
+        for (List<Document> group : Groups) {
+            groupShards.add(new FingerPrintShards(group, ShardBits));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Threads);
+        try {
+            List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+            for (int shard = 0; shard < sinks.size(); shard++) {
+                tasks.add(pool.submit(new Shard(groupShards, shard, sinks.get(shard))));
+            }
+            for (ForkJoinTask<Void> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private class Shard implements Callable<Void> {
+
+        private final List<FingerPrintShards> GroupShards;
+        private final int Number;
+        private final MatchSink Sink;
+
+        Shard(List<FingerPrintShards> groupShards, int index, MatchSink sink) {
+            GroupShards = groupShards;
+            Number = index;
+            Sink = sink;
+        }
+
+        @Override
+        public Void call() {
+            List<Index> indexList = new ArrayList<>();
+            for (FingerPrintShards shards : GroupShards) {
+                indexList.add(shards.getIndex(Number));
+            }
+
+            // Keys of an archive are sorted, so its shard is a range of slots
+            for (MappedIndex archive : Archives) {
+                indexList.add(archive.getShard(ShardBits, Number));
+            }
+
+            if (Cap != null) {
+                indexList = Cap.Apply(indexList);
+            }
+
+            Match(indexList, Groups.size(), Sink);
+            if (Sink instanceof Batch) {
+                ((Batch) Sink).Flush();
+            }
+            return null;
+        }
+    }
+
+    /*
+     *  Collects the matches of a shard and passes them on to a shared sink
+     *  BatchSize at a time. The sink is locked while a batch is passed on, so
+     *  it is only ever called by one thread at a time.
+     */
+    private static class Batch implements MatchSink {
+
+        private static final int BatchSize = 4096;
+
+        private final MatchSink Sink;
+        private final List<Match> Matches = new ArrayList<>();
+
+        Batch(MatchSink sink) {
+            Sink = sink;
+        }
+
+        @Override
+        public void Add(Match match) {
+            Matches.add(match);
+            if (Matches.size() == BatchSize) {
+                Flush();
+            }
+        }
+
+        void Flush() {
+            synchronized (Sink) {
+                for (Match match : Matches) {
+                    Sink.Add(match);
+                }
+            }
+            Matches.clear();
+        }
+    }
+}
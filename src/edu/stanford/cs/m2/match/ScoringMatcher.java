@@ -0,0 +1,367 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ *  NPartiteMatcher that decides which document pairs are worth looking at
+ *  before it creates a single Match.
+ *
+ *  The first phase walks every hash once and counts, in a primitive table,
+ *  the distinct fingerprints shared by each pair of documents that the
+ *  N-partite rules pair up (documents are never paired with themselves). The
+ *  pairs are scored, and only those scoring at least Threshold, and among
+ *  them only the Top best if Top is positive, are kept. A top-K query never
+ *  holds more than K pairs: documents are streamed through a bounded heap
+ *  instead of counting every pair in one table. The second phase only
+ *  creates the matches of the kept pairs, looking up the fingerprints of the
+ *  first document of each in the index of the second, so the aggregator
+ *  never sees the others and the join is not repeated over the corpus.
+ *
+ *  Documents are numbered across indexes: the document id plus the number of
+ *  documents in the indexes before its own.
+ */
+public class ScoringMatcher extends NPartiteMatcher implements PairScorer {
+
+    public Similarity Similarity;
+    public double Threshold;
+    public int Top;
+
+    private List<ScoredPair> Pairs = new ArrayList<>();
+
+    public ScoringMatcher(List<List<Document>> groups, List<MappedIndex> archives,
+            Similarity similarity, double threshold, int top) {
+        super(groups, archives);
+        Similarity = similarity;
+        Threshold = threshold;
+        Top = top;
+    }
+
+    /*
+     *  Returns the pairs kept by the last call to Match(), best first.
+     */
+    public List<ScoredPair> getPairs() {
+        return Pairs;
+    }
+
+    /*
+     *  Runs only the first phase and returns the kept pairs, best first.
+     */
+    @Override
+    public List<ScoredPair> Score() {
+        List<Index> indexList = getIndexes();
+        Score(indexList, getOffsets(indexList));
+        return Pairs;
+    }
+
+    @Override
+    public void Match(MatchSink sink) {
+        List<Index> indexList = getIndexes();
+        int[] offsets = getOffsets(indexList);
+        int[] owners = getOwners(offsets);
+
+        // Phase two: create the matches of the kept pairs only. The first
+        // document of a pair always belongs to a group, since groups are
+        // numbered before archives.
+        for (long pair : Score(indexList, offsets)) {
+            int document1 = PairCounts.getFirst(pair);
+            int document2 = PairCounts.getSecond(pair);
+            Match(indexList.get(owners[document1]), document1 - offsets[owners[document1]],
+                    indexList.get(owners[document2]), document2 - offsets[owners[document2]], sink);
+        }
+    }
+
+    static int[] getOffsets(List<Index> indexList) {
+        int[] offsets = new int[indexList.size() + 1];
+        for (int i = 0; i < indexList.size(); i++) {
+            offsets[i + 1] = offsets[i] + indexList.get(i).getDocumentCount();
+        }
+        return offsets;
+    }
+
+    /*
+     *  Phase one: scores the pairs, fills in Pairs and returns the kept pairs,
+     *  best first. With a positive Top, documents are streamed through a bounded
+     *  heap and only Top pairs are held at any time; otherwise every pair is
+     *  counted in one table.
+     */
+    private long[] Score(List<Index> indexList, int[] offsets) {
+        int groupCount = Groups.size();
+        int[] sizes = getSizes(indexList, offsets);
+
+        long[] keys;
+        double[] scores;
+        int[] shared;
+        if (Top > 0) {
+            PairHeap heap = Rank(indexList, groupCount, offsets, sizes);
+            keys = new long[heap.getSize()];
+            scores = new double[heap.getSize()];
+            shared = new int[heap.getSize()];
+            heap.Drain(keys, scores, shared);
+        } else {
+            PairCounts counts = Count(indexList, groupCount, offsets);
+            final long[] candidates = new long[counts.getSize()];
+            final double[] candidateScores = new double[counts.getSize()];
+            List<Integer> kept = new ArrayList<>();
+            for (int slot = 0, n = 0; slot < counts.getSlots(); slot++) {
+                int count = counts.getCountAt(slot);
+                if (count == 0) {
+                    continue;
+                }
+                long pair = counts.getKey(slot);
+                double score = Similarity.Score(count, sizes[PairCounts.getFirst(pair)], sizes[PairCounts.getSecond(pair)]);
+                if (score >= Threshold) {
+                    candidates[n] = pair;
+                    candidateScores[n] = score;
+                    kept.add(n++);
+                }
+            }
+
+            Collections.sort(kept, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int c = Double.compare(candidateScores[b], candidateScores[a]);
+                    return c != 0 ? c : Long.compare(candidates[a], candidates[b]);
+                }
+            });
+
+            keys = new long[kept.size()];
+            scores = new double[kept.size()];
+            shared = new int[kept.size()];
+            for (int n = 0; n < kept.size(); n++) {
+                keys[n] = candidates[kept.get(n)];
+                scores[n] = candidateScores[kept.get(n)];
+                shared[n] = counts.getCount(keys[n]);
+            }
+        }
+
+        Pairs = new ArrayList<>();
+        for (int n = 0; n < keys.length; n++) {
+            long pair = keys[n];
+            Pairs.add(new ScoredPair(
+                    getDocument(indexList, offsets, PairCounts.getFirst(pair)),
+                    getDocument(indexList, offsets, PairCounts.getSecond(pair)),
+                    shared[n], scores[n]));
+        }
+        return keys;
+    }
+
+    /*
+     *  Counts the distinct hashes of every document.
+     */
+    private static int[] getSizes(List<Index> indexList, int[] offsets) {
+        int[] sizes = new int[offsets[indexList.size()]];
+        for (int i = 0; i < indexList.size(); i++) {
+            Index index = indexList.get(i);
+            for (int slot = 0; slot < index.getSlots(); slot++) {
+                int previous = -1;
+                for (int p = 0; p < index.getCount(slot); p++) {
+                    int id = Postings.getDocument(index.getPosting(slot, p));
+                    if (id != previous) {
+                        sizes[offsets[i] + id]++;
+                        previous = id;
+                    }
+                }
+            }
+        }
+        return sizes;
+    }
+
+    /*
+     *  Counts, for every pair of documents that may be matched, the distinct
+     *  hashes they share.
+     */
+    private static PairCounts Count(List<Index> indexList, int groupCount, int[] offsets) {
+        PairCounts counts = new PairCounts();
+        int[] documents = new int[16];
+        int[] owners = new int[16];
+
+        for (int i = 0; i < indexList.size(); i++) {
+            Index index = indexList.get(i);
+            next:
+            for (int slot = 0; slot < index.getSlots(); slot++) {
+                if (index.getCount(slot) == 0) {
+                    continue;
+                }
+                long hash = index.getKey(slot);
+
+                // Every hash is counted from the first index that holds it
+                for (int j = 0; j < i; j++) {
+                    if (indexList.get(j).find(hash) != -1) {
+                        continue next;
+                    }
+                }
+
+                // Postings are in document order: collect the distinct
+                // documents that hold the hash
+                int n = 0;
+                for (int j = i; j < indexList.size(); j++) {
+                    Index other = indexList.get(j);
+                    int otherSlot = j == i ? slot : other.find(hash);
+                    if (otherSlot == -1) {
+                        continue;
+                    }
+                    int previous = -1;
+                    for (int p = 0; p < other.getCount(otherSlot); p++) {
+                        int id = Postings.getDocument(other.getPosting(otherSlot, p));
+                        if (id == previous) {
+                            continue;
+                        }
+                        previous = id;
+                        if (n == documents.length) {
+                            documents = Arrays.copyOf(documents, 2 * n);
+                            owners = Arrays.copyOf(owners, 2 * n);
+                        }
+                        documents[n] = offsets[j] + id;
+                        owners[n++] = j;
+                    }
+                }
+
+                for (int a = 0; a < n; a++) {
+                    for (int b = a + 1; b < n; b++) {
+                        if (isPaired(owners[a], owners[b], groupCount)) {
+                            counts.Increment(PairCounts.pack(documents[a], documents[b]));
+                        }
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    /*
+     *  Streams the group documents one at a time. The distinct hashes of a
+     *  document are looked up in every index it is paired with, and the
+     *  hashes shared with each later document are accumulated in a table
+     *  indexed by document and cleared after scoring. Every pair is thus
+     *  scored exactly once, when its first document is streamed, and memory
+     *  beyond the heap is linear in the number of documents.
+     */
+    private PairHeap Rank(List<Index> indexList, int groupCount, int[] offsets, int[] sizes) {
+        PairHeap heap = new PairHeap(Top);
+        int[] shared = new int[sizes.length];
+        int[] touched = new int[16];
+
+        for (int i = 0; i < groupCount; i++) {
+            Index index = indexList.get(i);
+            for (int id = 0; id < index.getDocumentCount(); id++) {
+                int document1 = offsets[i] + id;
+                FingerPrints fingerPrints = index.getDocument(id).FingerPrints;
+
+                long[] hashes = new long[fingerPrints.Size];
+                for (int f = 0; f < fingerPrints.Size; f++) {
+                    hashes[f] = fingerPrints.getHash(f);
+                }
+                Arrays.sort(hashes);
+
+                int n = 0;
+                for (int f = 0; f < hashes.length; f++) {
+                    if (f > 0 && hashes[f] == hashes[f - 1]) {
+                        continue;
+                    }
+                    for (int j = i; j < indexList.size(); j++) {
+                        if (!isPaired(i, j, groupCount)) {
+                            continue;
+                        }
+                        Index other = indexList.get(j);
+                        int slot = other.find(hashes[f]);
+                        if (slot == -1) {
+                            continue;
+                        }
+                        int previous = -1;
+                        for (int p = 0; p < other.getCount(slot); p++) {
+                            int otherId = Postings.getDocument(other.getPosting(slot, p));
+                            int document2 = offsets[j] + otherId;
+                            if (otherId == previous || document2 <= document1) {
+                                continue;
+                            }
+                            previous = otherId;
+                            if (shared[document2]++ == 0) {
+                                if (n == touched.length) {
+                                    touched = Arrays.copyOf(touched, 2 * n);
+                                }
+                                touched[n++] = document2;
+                            }
+                        }
+                    }
+                }
+
+                for (int t = 0; t < n; t++) {
+                    int document2 = touched[t];
+                    double score = Similarity.Score(shared[document2], sizes[document1], sizes[document2]);
+                    if (score >= Threshold && heap.isCandidate(score)) {
+                        heap.Offer(PairCounts.pack(document1, document2), score, shared[document2]);
+                    }
+                    shared[document2] = 0;
+                }
+            }
+        }
+        return heap;
+    }
+
+    /*
+     *  Groups are paired with every later index, and with themselves only if
+     *  there is a single group; archives are not paired with each other.
+     */
+    static boolean isPaired(int index1, int index2, int groupCount) {
+        if (index1 == index2) {
+            return index1 < groupCount && groupCount == 1;
+        }
+        return Math.min(index1, index2) < groupCount;
+    }
+
+    static Document getDocument(List<Index> indexList, int[] offsets, int document) {
+        int i = Arrays.binarySearch(offsets, document);
+        // Skip over indexes without documents, which share their offset
+        if (i >= 0) {
+            while (offsets[i + 1] == document) {
+                i++;
+            }
+        } else {
+            i = -i - 2;
+        }
+        return indexList.get(i).getDocument(document - offsets[i]);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.match.index.Index;
+import edu.stanford.cs.m2.match.index.MappedIndex;
+import edu.stanford.cs.m2.match.index.Postings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Exact threshold similarity join (AllPairs with the positional filter of
+ *  PPJoin): finds every pair of documents whose sets of distinct
+ *  fingerprints have a Jaccard similarity of at least Threshold, and matches
+ *  only those pairs.
+ *
+ *  Hashes are renumbered by global rarity, so every document becomes a
+ *  sorted array of token ranks, rarest first. A pair with Jaccard t shares
+ *  at least one of the first |x| - ceil(t |x|) + 1 tokens of each document,
+ *  so documents are processed by increasing size, and each one probes an
+ *  inverted index that only holds the prefixes of the smaller documents:
+ *  - the length filter skips documents shorter than t |x|, which are all at
+ *    the head of every posting list;
+ *  - the positional filter drops a candidate as soon as the tokens left in
+ *    either document cannot bring the overlap up to what t requires;
+ *  - candidates left are verified by merging the two token arrays.
+ *  Pairs sharing only common fingerprints are thus never even counted,
+ *  unlike with the all-shared-keys loop.
+ */
+public class SimilarityJoinMatcher extends NPartiteMatcher implements PairScorer {
+
+    public double Threshold;
+
+    // Slack against rounding when turning the threshold into token counts;
+    // it only makes the filters more permissive
+    private static final double Epsilon = 1e-9;
+
+    public SimilarityJoinMatcher(List<List<Document>> groups, List<MappedIndex> archives, double threshold) {
+        super(groups, archives);
+        if (!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException(String.valueOf(threshold));
+        }
+        Threshold = threshold;
+    }
+
+    @Override
+    public List<ScoredPair> Score() {
+        List<Index> indexList = getIndexes();
+        int[] offsets = ScoringMatcher.getOffsets(indexList);
+        int[] owners = getOwners(offsets);
+        int[][] documents = Tokenize(indexList, offsets);
+
+        List<ScoredPair> pairs = new ArrayList<>();
+        long[] joined = Join(documents, owners);
+        for (int n = 0; n < joined.length; n += 2) {
+            int document1 = PairCounts.getFirst(joined[n]);
+            int document2 = PairCounts.getSecond(joined[n]);
+            int overlap = (int) joined[n + 1];
+            pairs.add(new ScoredPair(
+                    indexList.get(owners[document1]).getDocument(document1 - offsets[owners[document1]]),
+                    indexList.get(owners[document2]).getDocument(document2 - offsets[owners[document2]]),
+                    overlap, Similarity.Jaccard.Score(overlap, documents[document1].length, documents[document2].length)));
+        }
+        return pairs;
+    }
+
+    @Override
+    public void Match(MatchSink sink) {
+        List<Index> indexList = getIndexes();
+        int[] offsets = ScoringMatcher.getOffsets(indexList);
+        int[] owners = getOwners(offsets);
+
+        long[] joined = Join(Tokenize(indexList, offsets), owners);
+        for (int n = 0; n < joined.length; n += 2) {
+            int document1 = PairCounts.getFirst(joined[n]);
+            int document2 = PairCounts.getSecond(joined[n]);
+            Match(indexList.get(owners[document1]), document1 - offsets[owners[document1]],
+                    indexList.get(owners[document2]), document2 - offsets[owners[document2]], sink);
+        }
+    }
+
+    /*
+     *  Turns every document into the sorted ranks of its distinct hashes,
+     *  where hashes found in fewer documents rank first.
+     */
+    private static int[][] Tokenize(List<Index> indexList, int[] offsets) {
+        int documentCount = offsets[indexList.size()];
+        int[] sizes = new int[documentCount];
+        int[][] tokens = new int[documentCount][];
+        for (int d = 0; d < documentCount; d++) {
+            tokens[d] = new int[8];
+        }
+
+        // Number every hash once, from the first index that holds it, and
+        // record its document frequency
+        int[] frequencies = new int[1024];
+        int hashCount = 0;
+        int[] holders = new int[16];
+        for (int i = 0; i < indexList.size(); i++) {
+            Index index = indexList.get(i);
+            next:
+            for (int slot = 0; slot < index.getSlots(); slot++) {
+                if (index.getCount(slot) == 0) {
+                    continue;
+                }
+                long hash = index.getKey(slot);
+                for (int j = 0; j < i; j++) {
+                    if (indexList.get(j).find(hash) != -1) {
+                        continue next;
+                    }
+                }
+
+                int n = 0;
+                for (int j = i; j < indexList.size(); j++) {
+                    Index other = indexList.get(j);
+                    int otherSlot = j == i ? slot : other.find(hash);
+                    if (otherSlot == -1) {
+                        continue;
+                    }
+                    int previous = -1;
+                    for (int p = 0; p < other.getCount(otherSlot); p++) {
+                        int id = Postings.getDocument(other.getPosting(otherSlot, p));
+                        if (id != previous) {
+                            previous = id;
+                            if (n == holders.length) {
+                                holders = Arrays.copyOf(holders, 2 * n);
+                            }
+                            holders[n++] = offsets[j] + id;
+                        }
+                    }
+                }
+
+                if (hashCount == frequencies.length) {
+                    frequencies = Arrays.copyOf(frequencies, 2 * hashCount);
+                }
+                frequencies[hashCount] = n;
+                for (int h = 0; h < n; h++) {
+                    int d = holders[h];
+                    if (sizes[d] == tokens[d].length) {
+                        tokens[d] = Arrays.copyOf(tokens[d], 2 * sizes[d]);
+                    }
+                    tokens[d][sizes[d]++] = hashCount;
+                }
+                hashCount++;
+            }
+        }
+
+        // Rank the hashes by frequency, ties broken by number
+        long[] order = new long[hashCount];
+        for (int h = 0; h < hashCount; h++) {
+            order[h] = ((long) frequencies[h] << 32) | h;
+        }
+        Arrays.sort(order);
+        int[] ranks = new int[hashCount];
+        for (int r = 0; r < hashCount; r++) {
+            ranks[(int) order[r]] = r;
+        }
+
+        for (int d = 0; d < documentCount; d++) {
+            int[] document = Arrays.copyOf(tokens[d], sizes[d]);
+            for (int t = 0; t < document.length; t++) {
+                document[t] = ranks[document[t]];
+            }
+            Arrays.sort(document);
+            tokens[d] = document;
+        }
+        return tokens;
+    }
+
+    /*
+     *  Returns the pairs that reach the threshold and may be matched, as
+     *  (pair, overlap) entries.
+     */
+    private long[] Join(int[][] documents, int[] owners) {
+        int documentCount = documents.length;
+        int groupCount = Groups.size();
+        double t = Threshold;
+
+        // Process the documents by increasing size
+        long[] order = new long[documentCount];
+        for (int d = 0; d < documentCount; d++) {
+            order[d] = ((long) documents[d].length << 32) | d;
+        }
+        Arrays.sort(order);
+
+        // Inverted index over the indexing prefixes: token -> (document,
+        // position) pairs, in processing order
+        int tokenCount = 0;
+        for (int[] document : documents) {
+            for (int token : document) {
+                tokenCount = Math.max(tokenCount, token + 1);
+            }
+        }
+        int[][] lists = new int[tokenCount][];
+        int[] listSizes = new int[tokenCount];
+        int[] listStarts = new int[tokenCount];
+
+        int[] overlaps = new int[documentCount];
+        int[] touched = new int[16];
+        long[] result = new long[16];
+        int resultSize = 0;
+
+        for (int o = 0; o < documentCount; o++) {
+            int x = (int) order[o];
+            int[] tokensX = documents[x];
+            int sizeX = tokensX.length;
+            if (sizeX == 0) {
+                continue;
+            }
+
+            int minSize = (int) Math.ceil(t * sizeX - Epsilon);
+            int probePrefix = sizeX - (int) Math.ceil(t * sizeX - Epsilon) + 1;
+            int n = 0;
+
+            for (int i = 0; i < probePrefix; i++) {
+                int token = tokensX[i];
+                int[] list = lists[token];
+
+                // Length filter: shorter documents are at the head of the list
+                while (listStarts[token] < listSizes[token]
+                        && documents[list[2 * listStarts[token]]].length < minSize) {
+                    listStarts[token]++;
+                }
+
+                for (int e = listStarts[token]; e < listSizes[token]; e++) {
+                    int y = list[2 * e];
+                    int j = list[2 * e + 1];
+                    if (overlaps[y] < 0) {
+                        continue;
+                    }
+                    int sizeY = documents[y].length;
+
+                    // Positional filter: the overlap needed, against what the
+                    // overlap so far plus the tokens left can reach
+                    int required = (int) Math.ceil(t / (1 + t) * (sizeX + sizeY) - Epsilon);
+                    int reachable = overlaps[y] + 1 + Math.min(sizeX - i - 1, sizeY - j - 1);
+                    if (overlaps[y] == 0) {
+                        if (n == touched.length) {
+                            touched = Arrays.copyOf(touched, 2 * n);
+                        }
+                        touched[n++] = y;
+                    }
+                    overlaps[y] = reachable >= required ? overlaps[y] + 1 : Integer.MIN_VALUE;
+                }
+            }
+
+            // Verify the surviving candidates
+            for (int c = 0; c < n; c++) {
+                int y = touched[c];
+                boolean candidate = overlaps[y] > 0;
+                overlaps[y] = 0;
+                if (!candidate || !ScoringMatcher.isPaired(owners[Math.min(x, y)], owners[Math.max(x, y)], groupCount)) {
+                    continue;
+                }
+                int overlap = getOverlap(tokensX, documents[y]);
+                if (Similarity.Jaccard.Score(overlap, sizeX, documents[y].length) >= t) {
+                    if (resultSize == result.length) {
+                        result = Arrays.copyOf(result, 2 * resultSize);
+                    }
+                    result[resultSize++] = PairCounts.pack(Math.min(x, y), Math.max(x, y));
+                    result[resultSize++] = overlap;
+                }
+            }
+
+            // Index the shorter prefix that is enough against larger documents
+            int indexPrefix = sizeX - (int) Math.ceil(2 * t / (1 + t) * sizeX - Epsilon) + 1;
+            for (int i = 0; i < indexPrefix; i++) {
+                int token = tokensX[i];
+                if (lists[token] == null) {
+                    lists[token] = new int[4];
+                } else if (2 * listSizes[token] == lists[token].length) {
+                    lists[token] = Arrays.copyOf(lists[token], 2 * lists[token].length);
+                }
+                lists[token][2 * listSizes[token]] = x;
+                lists[token][2 * listSizes[token] + 1] = i;
+                listSizes[token]++;
+            }
+        }
+
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    private static int getOverlap(int[] tokens1, int[] tokens2) {
+        int overlap = 0;
+        for (int i = 0, j = 0; i < tokens1.length && j < tokens2.length;) {
+            if (tokens1[i] < tokens2[j]) {
+                i++;
+            } else if (tokens1[i] > tokens2[j]) {
+                j++;
+            } else {
+                overlap++;
+                i++;
+                j++;
+            }
+        }
+        return overlap;
+    }
+}
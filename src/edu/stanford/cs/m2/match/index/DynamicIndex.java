@@ -0,0 +1,273 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.match.index;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  Mutable fingerprint index that documents can be added to and removed from
+ *  one at a time.
+ *
+ *  Hashes are kept in an open-addressing table with linear probing, and every
+ *  slot owns a growable posting array, kept in document order because ids are
+ *  handed out in increasing order and never reused. The ids of removed
+ *  documents stay allocated: getDocument returns null for them and they have
+ *  no postings left. A slot whose last posting is removed keeps its key until
+ *  the table is next resized.
+ */
+public class DynamicIndex implements Index {
+
+    private final List<Document> Documents = new ArrayList<>();
+    private final List<FingerPrints> Indexed = new ArrayList<>();
+    private final Map<Document, Integer> Ids = new HashMap<>();
+
+    private long[] keys;
+    private int[] counts;
+    private long[][] postings;
+    private boolean[] used;
+    private int mask;
+    private int occupied;
+
+    public DynamicIndex() {
+        allocate(16);
+    }
+
+    public DynamicIndex(List<Document> documents) {
+        this();
+        for (Document document : documents) {
+            Add(document);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        postings = new long[capacity][];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        occupied = 0;
+    }
+
+    /*
+     *  Indexes the fingerprints of a document and returns its id.
+     */
+    public int Add(Document document) {
+        if (Ids.containsKey(document)) {
+            throw new IllegalArgumentException(document.Name + " is already indexed");
+        }
+
+        int id = Documents.size();
+        Documents.add(document);
+        Ids.put(document, id);
+
+        // Keep the indexed fingerprints in case the document is reprocessed
+        FingerPrints fingerPrints = document.FingerPrints;
+        Indexed.add(fingerPrints);
+        for (int i = 0; i < fingerPrints.Size; i++) {
+            int slot = claim(fingerPrints.getHash(i));
+            if (postings[slot] == null) {
+                postings[slot] = new long[2];
+            } else if (counts[slot] == postings[slot].length) {
+                long[] grown = new long[counts[slot] * 2];
+                System.arraycopy(postings[slot], 0, grown, 0, counts[slot]);
+                postings[slot] = grown;
+            }
+            postings[slot][counts[slot]++] = Postings.pack(id, fingerPrints.getPosition(i));
+        }
+
+        return id;
+    }
+
+    /*
+     *  Drops the postings of a document and returns its former id, or -1 if it
+     *  was not indexed.
+     */
+    public int Remove(Document document) {
+        Integer boxed = Ids.remove(document);
+        if (boxed == null) {
+            return -1;
+        }
+        int id = boxed;
+
+        FingerPrints fingerPrints = Indexed.get(id);
+        for (int i = 0; i < fingerPrints.Size; i++) {
+            int slot = find(fingerPrints.getHash(i));
+            if (slot == -1) {
+                continue;
+            }
+
+            // The postings of a document are contiguous; close the gap
+            long[] list = postings[slot];
+            int count = counts[slot];
+            int begin = 0;
+            while (begin < count && Postings.getDocument(list[begin]) < id) {
+                begin++;
+            }
+            int end = begin;
+            while (end < count && Postings.getDocument(list[end]) == id) {
+                end++;
+            }
+            System.arraycopy(list, end, list, begin, count - end);
+            counts[slot] = count - (end - begin);
+        }
+
+        Documents.set(id, null);
+        Indexed.set(id, null);
+        return id;
+    }
+
+    /*
+     *  Swaps a document for a new version of it and returns the id of the new
+     *  version.
+     */
+    public int Replace(Document previous, Document document) {
+        Remove(previous);
+        return Add(document);
+    }
+
+    /*
+     *  Returns the id of an indexed document, or -1.
+     */
+    public int getId(Document document) {
+        Integer id = Ids.get(document);
+        return id == null ? -1 : id;
+    }
+
+    private int claim(long hash) {
+        int slot = spread(hash) & mask;
+        while (used[slot]) {
+            if (keys[slot] == hash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Keep the load factor under 3/4
+        if ((occupied + 1) * 4 > keys.length * 3) {
+            rehash();
+            return claim(hash);
+        }
+
+        used[slot] = true;
+        keys[slot] = hash;
+        occupied++;
+        return slot;
+    }
+
+    /*
+     *  Resizes the table to fit the live keys and drops the empty ones.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        long[][] oldPostings = postings;
+
+        int live = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                live++;
+            }
+        }
+        allocate(Integer.highestOneBit(Math.max(8, live * 2)) << 1);
+
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                int newSlot = claim(oldKeys[slot]);
+                counts[newSlot] = oldCounts[slot];
+                postings[newSlot] = oldPostings[slot];
+            }
+        }
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public int find(long hash) {
+        int slot = spread(hash) & mask;
+        while (used[slot]) {
+            if (keys[slot] == hash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return Documents.size();
+    }
+
+    @Override
+    public Document getDocument(int id) {
+        return Documents.get(id);
+    }
+
+    @Override
+    public int getSlots() {
+        return keys.length;
+    }
+
+    @Override
+    public long getKey(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    public int getCount(int slot) {
+        return counts[slot];
+    }
+
+    @Override
+    public long getPosting(int slot, int i) {
+        return postings[slot][i];
+    }
+
+    @Override
+    public Snippet getSnippet(long posting) {
+        int id = Postings.getDocument(posting);
+        int position = Postings.getPosition(posting);
+        return new Snippet(Documents.get(id), position, position + Indexed.get(id).K - 1);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.match.index;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  In-memory fingerprint index over a list of documents, whose ids are their
+ *  positions in the list.
+ *
+ *  Hashes are kept in an open-addressing table with linear probing. All
+ *  postings live in one long[], grouped by hash: slot s owns
+ *  postings[Starts[s] .. Starts[s] + Counts[s]), in document order. The index
+ *  costs 8 bytes per posting plus 16 bytes per table slot, and a lookup
+ *  touches a handful of adjacent array cells instead of following pointers.
+ */
+public class FingerPrintIndex implements Index {
+
+    private final List<Document> Documents;
+
+    private final long[] keys;
+    private final int[] counts;
+    private final int[] starts;
+    private final long[] postings;
+    private final int mask;
+
+    public FingerPrintIndex(List<Document> documents) {
+        this(new ArrayList<>(documents), getSize(documents));
+
+        // First pass: claim a slot per distinct hash and count its postings
+        for (Document document : Documents) {
+            FingerPrints fingerPrints = document.FingerPrints;
+            for (int i = 0; i < fingerPrints.Size; i++) {
+                counts[claim(fingerPrints.getHash(i))]++;
+            }
+        }
+
+        pointPastRanges();
+
+        // Second pass: fill in the postings back to front, which leaves each
+        // range sorted and every start pointing at its first posting
+        for (int id = Documents.size() - 1; id >= 0; id--) {
+            FingerPrints fingerPrints = Documents.get(id).FingerPrints;
+            for (int i = fingerPrints.Size - 1; i >= 0; i--) {
+                int slot = find(fingerPrints.getHash(i));
+                postings[--starts[slot]] = Postings.pack(id, fingerPrints.getPosition(i));
+            }
+        }
+    }
+
+    /*
+     *  Indexes the fingerprints hashes[begin .. end) of one shard, whose
+     *  postings are sorted in document and token order.
+     */
+    FingerPrintIndex(List<Document> documents, long[] hashes, long[] shardPostings, int begin, int end) {
+        this(documents, end - begin);
+
+        for (int i = begin; i < end; i++) {
+            counts[claim(hashes[i])]++;
+        }
+
+        pointPastRanges();
+
+        for (int i = end - 1; i >= begin; i--) {
+            postings[--starts[find(hashes[i])]] = shardPostings[i];
+        }
+    }
+
+    private FingerPrintIndex(List<Document> documents, int size) {
+        Documents = documents;
+
+        // Keep the load factor under 3/4, and at least one slot free so that
+        // looking up a missing hash terminates
+        int capacity = Integer.highestOneBit(size + size / 3 + 1) << 1;
+        mask = capacity - 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        starts = new int[capacity];
+        postings = new long[size];
+    }
+
+    private static int getSize(List<Document> documents) {
+        int size = 0;
+        for (Document document : documents) {
+            size += document.FingerPrints.Size;
+        }
+        return size;
+    }
+
+    // Points every slot just past the end of its postings range
+    private void pointPastRanges() {
+        int offset = 0;
+        for (int slot = 0; slot < starts.length; slot++) {
+            offset += counts[slot];
+            starts[slot] = offset;
+        }
+    }
+
+    private int claim(long hash) {
+        int slot = spread(hash) & mask;
+        while (counts[slot] != 0 && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = hash;
+        return slot;
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public int find(long hash) {
+        int slot = spread(hash) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == hash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return Documents.size();
+    }
+
+    @Override
+    public Document getDocument(int id) {
+        return Documents.get(id);
+    }
+
+    @Override
+    public int getSlots() {
+        return keys.length;
+    }
+
+    @Override
+    public long getKey(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    public int getCount(int slot) {
+        return counts[slot];
+    }
+
+    @Override
+    public long getPosting(int slot, int i) {
+        return postings[starts[slot] + i];
+    }
+
+    @Override
+    public Snippet getSnippet(long posting) {
+        Document document = Documents.get(Postings.getDocument(posting));
+        int position = Postings.getPosition(posting);
+        return new Snippet(document, position, position + document.FingerPrints.K - 1);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.match.index;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  The fingerprints of a list of documents, split once by the top ShardBits
+ *  bits of their hashes. Each shard is a contiguous range of hashes and
+ *  postings in document and token order, so indexing a shard only reads the
+ *  fingerprints that belong to it.
+ */
+public class FingerPrintShards {
+
+    public final int ShardBits;
+
+    private final List<Document> Documents;
+    private final long[] hashes;
+    private final long[] postings;
+
+    // Shard s owns hashes[starts[s] .. starts[s + 1])
+    private final int[] starts;
+
+    public FingerPrintShards(List<Document> documents, int shardBits) {
+        if (shardBits < 0 || shardBits > 16) {
+            throw new IllegalArgumentException(String.valueOf(shardBits));
+        }
+        Documents = new ArrayList<>(documents);
+        ShardBits = shardBits;
+
+        starts = new int[(1 << shardBits) + 1];
+        int size = 0;
+        for (Document document : Documents) {
+            FingerPrints fingerPrints = document.FingerPrints;
+            for (int i = 0; i < fingerPrints.Size; i++) {
+                starts[getShard(fingerPrints.getHash(i)) + 1]++;
+            }
+            size += fingerPrints.Size;
+        }
+        for (int shard = 0; shard < 1 << shardBits; shard++) {
+            starts[shard + 1] += starts[shard];
+        }
+
+        hashes = new long[size];
+        postings = new long[size];
+        int[] next = starts.clone();
+        for (int id = 0; id < Documents.size(); id++) {
+            FingerPrints fingerPrints = Documents.get(id).FingerPrints;
+            for (int i = 0; i < fingerPrints.Size; i++) {
+                long hash = fingerPrints.getHash(i);
+                int at = next[getShard(hash)]++;
+                hashes[at] = hash;
+                postings[at] = Postings.pack(id, fingerPrints.getPosition(i));
+            }
+        }
+    }
+
+    private int getShard(long hash) {
+        return ShardBits == 0 ? 0 : (int) (hash >>> (64 - ShardBits));
+    }
+
+    public FingerPrintIndex getIndex(int shard) {
+        return new FingerPrintIndex(Documents, hashes, postings, starts[shard], starts[shard + 1]);
+    }
+}
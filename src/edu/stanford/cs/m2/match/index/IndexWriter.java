@@ -0,0 +1,180 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.match.index;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.parse.TokenMask;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Writes the fingerprints of a list of documents to an index file that can
+ *  be opened with MappedIndex. All values are big-endian. The file consists
+ *  of:
+ *
+ *      header      magic, version, language, K, window, document count
+ *                  (ints), key count, posting count, filtered token mask
+ *                  (longs), padded to HeaderSize bytes
+ *      directory   DirectorySize + 1 longs; entry p is the number of keys
+ *                  whose top 16 bits are below p
+ *      keys        distinct hashes, sorted as unsigned numbers
+ *      starts      key count + 1 longs; postings of key i are
+ *                  postings[starts[i] .. starts[i + 1])
+ *      postings    (document id, token position) pairs packed into longs
+ *      stamps      document count pairs of longs: the size and last-modified
+ *                  time in milliseconds of each document's file when the
+ *                  index was written, or -1 if it could not be read
+ *      documents   document count + 1 longs of offsets into the names,
+ *                  relative to the start of the names
+ *      names       UTF-8 document names
+ */
+public class IndexWriter {
+
+    public static final int Magic = 0x4D324649;
+    public static final int Version = 1;
+    public static final int HeaderSize = 64;
+    public static final int DirectoryBits = 16;
+    public static final int DirectorySize = 1 << DirectoryBits;
+    public static final Charset NameCharset = Charset.forName("UTF-8");
+
+    public static void Write(List<Document> documents, int window, TokenMask mask, String path) throws IOException {
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("No documents to index");
+        }
+
+        FingerPrintIndex index = new FingerPrintIndex(documents);
+
+        // Collect the distinct hashes in unsigned order, which is signed order
+        // once the sign bit is flipped
+        int keyCount = 0;
+        for (int slot = 0; slot < index.getSlots(); slot++) {
+            if (index.getCount(slot) != 0) {
+                keyCount++;
+            }
+        }
+        long[] keys = new long[keyCount];
+        long postingCount = 0;
+        for (int slot = 0, i = 0; slot < index.getSlots(); slot++) {
+            if (index.getCount(slot) != 0) {
+                keys[i++] = index.getKey(slot) ^ Long.MIN_VALUE;
+                postingCount += index.getCount(slot);
+            }
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] ^= Long.MIN_VALUE;
+        }
+
+        byte[][] names = new byte[documents.size()][];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = documents.get(id).Name.getBytes(NameCharset);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            out.writeInt(Magic);
+            out.writeInt(Version);
+            out.writeInt(documents.get(0).Language.ordinal());
+            out.writeInt(documents.get(0).FingerPrints.K);
+            out.writeInt(window);
+            out.writeInt(documents.size());
+            out.writeLong(keyCount);
+            out.writeLong(postingCount);
+            out.writeLong(mask.Low);
+            out.writeLong(mask.High);
+            out.write(new byte[HeaderSize - out.size()]);
+
+            int key = 0;
+            for (int prefix = 0; prefix <= DirectorySize; prefix++) {
+                while (key < keyCount && getPrefix(keys[key]) < prefix) {
+                    key++;
+                }
+                out.writeLong(key);
+            }
+
+            for (long hash : keys) {
+                out.writeLong(hash);
+            }
+
+            long start = 0;
+            for (long hash : keys) {
+                out.writeLong(start);
+                start += index.getCount(index.find(hash));
+            }
+            out.writeLong(start);
+
+            for (long hash : keys) {
+                int slot = index.find(hash);
+                for (int i = 0; i < index.getCount(slot); i++) {
+                    out.writeLong(index.getPosting(slot, i));
+                }
+            }
+
+            for (Document document : documents) {
+                Path file = Paths.get(document.Name);
+                if (Files.isRegularFile(file)) {
+                    out.writeLong(Files.size(file));
+                    out.writeLong(Files.getLastModifiedTime(file).toMillis());
+                } else {
+                    out.writeLong(-1);
+                    out.writeLong(-1);
+                }
+            }
+
+            long offset = 0;
+            for (byte[] name : names) {
+                out.writeLong(offset);
+                offset += name.length;
+            }
+            out.writeLong(offset);
+
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+    }
+
+    static int getPrefix(long hash) {
+        return (int) (hash >>> (64 - DirectoryBits));
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+
+package edu.stanford.cs.m2.match.index;
+
+import edu.stanford.cs.m2.document.Document;
+import edu.stanford.cs.m2.document.Snippet;
+import edu.stanford.cs.m2.document.fingerprint.FingerPrints;
+import edu.stanford.cs.m2.document.language.Language;
+import edu.stanford.cs.m2.document.parse.TokenMask;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Read-only view of an index file written by IndexWriter. The file is mapped
+ *  into memory rather than read, so opening an index only costs reading its
+ *  header, and its pages are loaded by the operating system as they are
+ *  probed.
+ *
+ *  Slots are the positions of the keys in sorted order; a hash is found by
+ *  narrowing the search to its 16-bit prefix through the directory, then
+ *  binary searching the keys that share it. Documents of the index only carry
+ *  their names; their content is not stored.
+ */
+public class MappedIndex implements Index {
+
+    public String Path;
+    public Language Language;
+    public int K;
+    public int Window;
+    public TokenMask Mask;
+
+    private final int documentCount;
+    private final int keyCount;
+
+    private final LongArray directory;
+    private final LongArray keys;
+    private final LongArray starts;
+    private final LongArray postings;
+    private final LongArray stamps;
+    private final LongArray nameOffsets;
+    private final ByteArray names;
+
+    private final Document[] documents;
+
+    // Range of slots covered by this view
+    private final int first;
+    private final int last;
+
+    public MappedIndex(String path) throws IOException {
+        Path = path;
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, IndexWriter.HeaderSize);
+            if (header.getInt() != IndexWriter.Magic) {
+                throw new IOException("Not a fingerprint index: " + path);
+            }
+            int version = header.getInt();
+            if (version != IndexWriter.Version) {
+                throw new IOException("Unsupported index version " + version + ": " + path);
+            }
+            Language = edu.stanford.cs.m2.document.language.Language.values()[header.getInt()];
+            K = header.getInt();
+            Window = header.getInt();
+            documentCount = header.getInt();
+            long keyLength = header.getLong();
+            long postingLength = header.getLong();
+            Mask = new TokenMask(header.getLong(), header.getLong());
+
+            if (keyLength > Integer.MAX_VALUE) {
+                throw new IOException("Too many keys in " + path);
+            }
+            keyCount = (int) keyLength;
+
+            long offset = IndexWriter.HeaderSize;
+            directory = new LongArray(channel, offset, IndexWriter.DirectorySize + 1);
+            offset += 8L * (IndexWriter.DirectorySize + 1);
+            keys = new LongArray(channel, offset, keyCount);
+            offset += 8L * keyCount;
+            starts = new LongArray(channel, offset, keyCount + 1L);
+            offset += 8L * (keyCount + 1L);
+            postings = new LongArray(channel, offset, postingLength);
+            offset += 8L * postingLength;
+            stamps = new LongArray(channel, offset, 2L * documentCount);
+            offset += 16L * documentCount;
+            nameOffsets = new LongArray(channel, offset, documentCount + 1L);
+            offset += 8L * (documentCount + 1L);
+            names = new ByteArray(channel, offset, nameOffsets.get(documentCount));
+        }
+
+        documents = new Document[documentCount];
+        first = 0;
+        last = keyCount;
+    }
+
+    private MappedIndex(MappedIndex index, int first, int last) {
+        Path = index.Path;
+        Language = index.Language;
+        K = index.K;
+        Window = index.Window;
+        Mask = index.Mask;
+        documentCount = index.documentCount;
+        keyCount = index.keyCount;
+        directory = index.directory;
+        keys = index.keys;
+        starts = index.starts;
+        postings = index.postings;
+        stamps = index.stamps;
+        nameOffsets = index.nameOffsets;
+        names = index.names;
+        documents = index.documents;
+        this.first = first;
+        this.last = last;
+    }
+
+    /*
+     *  Returns a view of the keys whose top shardBits bits are equal to shard,
+     *  sharing the mapping and documents of this index.
+     */
+    public MappedIndex getShard(int shardBits, int shard) {
+        if (shardBits > IndexWriter.DirectoryBits) {
+            throw new IllegalArgumentException(String.valueOf(shardBits));
+        }
+        int width = IndexWriter.DirectoryBits - shardBits;
+        int begin = (int) directory.get((long) shard << width);
+        int end = (int) directory.get((long) (shard + 1) << width);
+        return new MappedIndex(this, Math.max(first, begin), Math.min(last, end));
+    }
+
+    /*
+     *  The size of the file of a document when the index was written, or -1
+     *  if it could not be read.
+     */
+    public long getFileSize(int id) {
+        return stamps.get(2L * id);
+    }
+
+    /*
+     *  The last-modified time of the file of a document when the index was
+     *  written, or -1 if it could not be read.
+     */
+    public long getFileModified(int id) {
+        return stamps.get(2L * id + 1);
+    }
+
+    /*
+     *  Returns the documents of the index, in id order, with their
+     *  fingerprints rebuilt from the postings of this view in token order.
+     *  This costs a pass over the keys and postings and a sort per document,
+     *  far less than processing the documents again.
+     */
+    public List<Document> LoadDocuments() {
+        int[] sizes = new int[documentCount];
+        for (int slot = first; slot < last; slot++) {
+            for (long i = starts.get(slot); i < starts.get(slot + 1L); i++) {
+                sizes[Postings.getDocument(postings.get(i))]++;
+            }
+        }
+
+        // Entries hold the token position in the top half and the slot in
+        // the bottom half, so sorting them puts them in token order
+        long[][] entries = new long[documentCount][];
+        for (int id = 0; id < documentCount; id++) {
+            entries[id] = new long[sizes[id]];
+            sizes[id] = 0;
+        }
+        for (int slot = first; slot < last; slot++) {
+            for (long i = starts.get(slot); i < starts.get(slot + 1L); i++) {
+                long posting = postings.get(i);
+                int id = Postings.getDocument(posting);
+                entries[id][sizes[id]++] = (long) Postings.getPosition(posting) << 32 | slot;
+            }
+        }
+
+        List<Document> documentList = new ArrayList<>(documentCount);
+        for (int id = 0; id < documentCount; id++) {
+            Arrays.sort(entries[id]);
+            FingerPrints fingerPrints = new FingerPrints(K, entries[id].length);
+            for (long entry : entries[id]) {
+                fingerPrints.Add(keys.get(entry & 0xFFFFFFFFL), (int) (entry >>> 32));
+            }
+            Document document = getDocument(id);
+            document.FingerPrints = fingerPrints;
+            documentList.add(document);
+        }
+        return documentList;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    @Override
+    public synchronized Document getDocument(int id) {
+        if (documents[id] == null) {
+            long begin = nameOffsets.get(id);
+            byte[] name = names.get(begin, (int) (nameOffsets.get(id + 1) - begin));
+            documents[id] = new Document(new String(name, IndexWriter.NameCharset), null, Language);
+        }
+        return documents[id];
+    }
+
+    @Override
+    public int getSlots() {
+        return last - first;
+    }
+
+    @Override
+    public long getKey(int slot) {
+        return keys.get(first + slot);
+    }
+
+    @Override
+    public int getCount(int slot) {
+        return (int) (starts.get(first + slot + 1L) - starts.get(first + slot));
+    }
+
+    @Override
+    public long getPosting(int slot, int i) {
+        return postings.get(starts.get(first + slot) + i);
+    }
+
+    @Override
+    public int find(long hash) {
+        int prefix = IndexWriter.getPrefix(hash);
+        int low = Math.max(first, (int) directory.get(prefix));
+        int high = Math.min(last, (int) directory.get(prefix + 1)) - 1;
+
+        // Keys sharing a prefix also share their sign, so signed comparison
+        // orders them correctly
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long key = keys.get(middle);
+            if (key < hash) {
+                low = middle + 1;
+            } else if (key > hash) {
+                high = middle - 1;
+            } else {
+                return middle - first;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Snippet getSnippet(long posting) {
+        int position = Postings.getPosition(posting);
+        return new Snippet(getDocument(Postings.getDocument(posting)), position, position + K - 1);
+    }
+
+    /*
+     *  A long[] stored in the file, mapped in chunks since a single mapping
+     *  cannot exceed 2 GB.
+     */
+    private static class LongArray {
+
+        private static final int ChunkBits = 27;
+        private static final long ChunkMask = (1L << ChunkBits) - 1;
+
+        private final LongBuffer[] chunks;
+
+        LongArray(FileChannel channel, long offset, long length) throws IOException {
+            chunks = new LongBuffer[(int) ((length + ChunkMask) >>> ChunkBits)];
+            for (int i = 0; i < chunks.length; i++) {
+                long size = Math.min(length - ((long) i << ChunkBits), 1L << ChunkBits);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + ((long) i << (ChunkBits + 3)), 8 * size).asLongBuffer();
+            }
+        }
+
+        long get(long index) {
+            return chunks[(int) (index >>> ChunkBits)].get((int) (index & ChunkMask));
+        }
+    }
+
+    private static class ByteArray {
+
+        private static final int ChunkBits = 30;
+        private static final long ChunkMask = (1L << ChunkBits) - 1;
+
+        private final ByteBuffer[] chunks;
+
+        ByteArray(FileChannel channel, long offset, long length) throws IOException {
+            chunks = new ByteBuffer[(int) ((length + ChunkMask) >>> ChunkBits)];
+            for (int i = 0; i < chunks.length; i++) {
+                long size = Math.min(length - ((long) i << ChunkBits), 1L << ChunkBits);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + ((long) i << ChunkBits), size);
+            }
+        }
+
+        byte[] get(long offset, int length) {
+            byte[] result = new byte[length];
+            for (int i = 0; i < length; i++) {
+                long position = offset + i;
+                result[i] = chunks[(int) (position >>> ChunkBits)].get((int) (position & ChunkMask));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ *  Copyright (c) 2014, Stanford University
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. All advertising materials mentioning features or use of this software
+ *     must display the following acknowledgement:
+ *     This product includes software developed by the <organization>.
+ *  4. Neither the name of the <organization> nor the
+ *     names of its contributors may be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ *  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ *  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  
+ *  AUTHOR: Chirag Sangani (csangani@stanford.edu)
+ *
+ */
+package edu.stanford.cs.m2.util;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/*
+ *  Lexer input read straight from the bytes of a file, either a heap array
+ *  or a memory-mapped buffer, without decoding them into a String first.
+ *  ASCII bytes are widened to chars one for one and every other byte
+ *  becomes '?', which is exactly what decoding the file as US-ASCII and
+ *  encoding it back used to hand to the lexer. Character offsets are
+ *  therefore byte offsets.
+ */
+public class ByteReader extends Reader {
+
+    private final ByteBuffer Buffer;
+
+    public ByteReader(ByteBuffer buffer) {
+        Buffer = buffer.duplicate();
+    }
+
+    public ByteReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /*
+     *  Charsets whose character offsets the lexer can take from byte
+     *  offsets: ASCII is a single byte per character, and UTF-8 only uses
+     *  bytes above 0x7F for characters outside of it.
+     */
+    public static boolean isSupported(Charset charset) {
+        String name = charset.name();
+        return name.equals("US-ASCII") || name.equals("UTF-8");
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        int count = Math.min(length, Buffer.remaining());
+        if (count == 0) {
+            return length == 0 ? 0 : -1;
+        }
+
+        if (Buffer.hasArray()) {
+            byte[] array = Buffer.array();
+            int position = Buffer.arrayOffset() + Buffer.position();
+            for (int i = 0; i < count; i++) {
+                byte b = array[position + i];
+                buffer[offset + i] = b >= 0 ? (char) b : '?';
+            }
+            Buffer.position(Buffer.position() + count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                byte b = Buffer.get();
+                buffer[offset + i] = b >= 0 ? (char) b : '?';
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
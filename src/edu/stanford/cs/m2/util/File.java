@@ -36,6 +36,8 @@
 package edu.stanford.cs.m2.util;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -46,4 +48,22 @@ public class File {
         byte[] encoded = Files.readAllBytes(Paths.get(path));
         return new String(encoded, encoding);
     }
+
+    // Files at least this large are mapped rather than read
+    public static final long MapThreshold = 1 << 20;
+
+    /*
+     *  Returns the bytes of a file. Small files are read into the heap, where
+     *  they are cheaper to scan than a mapping is to set up; larger ones are
+     *  mapped and paged in by the OS as they are scanned.
+     */
+    public static ByteBuffer Map(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path))) {
+            long size = channel.size();
+            if (size < MapThreshold) {
+                return ByteBuffer.wrap(Files.readAllBytes(Paths.get(path)));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
 }